@@ -0,0 +1,728 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.apache.commons.lang.Validate.isTrue;
+import static org.apache.commons.lang.Validate.notEmpty;
+import static org.apache.commons.lang.Validate.notNull;
+
+/**
+ * Writer that coalesces the inserts of many threads into batches.
+ * <p>
+ * The inserts are accumulated per time series and record type. A batch is sent when it reaches the 
+ * batch size or when it has been waiting for longer than the linger time. The statements of a batch are 
+ * written back-to-back on a single connection and flushed to the socket at once. The batches of a given 
+ * record type are always sent by the same thread.
+ * </p>
+ * <p>
+ * The number of batches sent or waiting to be sent is bounded. When the bound is reached, the threads 
+ * inserting records are blocked until a batch completes. The batches sent because of the linger time are 
+ * counted against the bound as well, but are handed over without waiting, so that the linger thread never
+ * blocks: the bound can therefore be exceeded by the batches lingering at that time, and the inserting 
+ * threads stay blocked until the number of batches in flight is back below it. Failures are reported 
+ * asynchronously: the failures are thrown by the next call to <code>insert</code>, <code>flush</code> or 
+ * <code>close</code>, the first one as the cause and the others as suppressed exceptions.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public final class BatchingWriter implements Closeable {
+
+    /**
+     * The client used to send the batches.
+     */
+    private final HorizonDB client;
+
+    /**
+     * The database in which the records are inserted.
+     */
+    private final String database;
+
+    /**
+     * The maximum number of records per batch.
+     */
+    private final int batchSize;
+
+    /**
+     * The maximum time in milliseconds a record can wait before its batch is sent.
+     */
+    private final long lingerTimeInMillis;
+
+    /**
+     * The maximum number of batches in flight before the inserting threads are blocked.
+     */
+    private final int maxInFlightBatches;
+
+    /**
+     * The lock protecting the number of batches in flight.
+     */
+    private final Lock inFlightLock = new ReentrantLock();
+
+    /**
+     * The condition signaled when a batch in flight has been processed.
+     */
+    private final Condition batchProcessed = this.inFlightLock.newCondition();
+
+    /**
+     * The number of batches handed over to the senders and not yet processed.
+     */
+    private int inFlightBatches;
+
+    /**
+     * The batches being filled per record type.
+     */
+    private final Map<String, Batch> batches = new HashMap<>();
+
+    /**
+     * The executors sending the batches. The batches of a given record type are always sent by the same
+     * executor to preserve their order.
+     */
+    private final ExecutorService[] senders;
+
+    /**
+     * The scheduler used to send the batches that reached their linger time.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * The failures that occurred while sending the batches and that have not been reported yet.
+     */
+    private final Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The lock preventing the writer from being closed while records are inserted or flushed.
+     */
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+
+    /**
+     * <code>true</code> if this writer has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Creates a new <code>Builder</code> to build a <code>BatchingWriter</code> inserting records in the 
+     * specified database.
+     * 
+     * @param client the client used to send the batches
+     * @param database the database in which the records are inserted
+     * @return a new <code>Builder</code>
+     */
+    public static Builder newBuilder(HorizonDB client, String database) {
+
+        return new Builder(client, database);
+    }
+
+    /**
+     * Inserts a record with the specified values into the specified time series.
+     * <p>
+     * The values must be formatted as in an HQL <code>INSERT</code> statement, 
+     * for example: <code>'2013-11-14 11:46:00.000', 125E-1, 10</code>.
+     * </p>
+     * 
+     * @param timeSeries the time series name
+     * @param recordType the record type name
+     * @param values the record values
+     */
+    public void insert(String timeSeries, String recordType, String values) {
+
+        this.closeLock.readLock().lock();
+
+        try {
+
+            awaitWindow();
+            checkState();
+            doInsert(timeSeries, recordType, values);
+
+        } finally {
+
+            this.closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Sends all the pending records and waits until all the batches have been processed.
+     */
+    public void flush() {
+
+        this.closeLock.readLock().lock();
+
+        try {
+
+            checkState();
+            sendPendingBatches();
+            awaitSentBatches();
+
+        } finally {
+
+            this.closeLock.readLock().unlock();
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+
+        this.closeLock.writeLock().lock();
+
+        try {
+
+            if (this.closed) {
+                return;
+            }
+
+            this.closed = true;
+
+            try {
+
+                // The linger tasks must be stopped before the senders are shut down, otherwise they could
+                // hand over their batch to a terminated sender.
+                this.scheduler.shutdown();
+                this.scheduler.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            } catch (InterruptedException e) {
+
+                Thread.currentThread().interrupt();
+                throw new HorizonDBException("", e);
+
+            } finally {
+
+                try {
+
+                    sendPendingBatches();
+                    awaitSentBatches();
+
+                } finally {
+
+                    for (ExecutorService sender : this.senders) {
+                        sender.shutdown();
+                    }
+                }
+            }
+
+        } finally {
+
+            this.closeLock.writeLock().unlock();
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Adds the specified record to its batch and sends the batch if it is full. The read lock must be
+     * held by the caller.
+     * 
+     * @param timeSeries the time series name
+     * @param recordType the record type name
+     * @param values the record values
+     */
+    private void doInsert(String timeSeries, String recordType, String values) {
+
+        String key = timeSeries + '.' + recordType;
+        String statement = new StringBuilder().append("INSERT INTO ")
+                                              .append(this.database)
+                                              .append('.')
+                                              .append(key)
+                                              .append(" VALUES (")
+                                              .append(values)
+                                              .append(");")
+                                              .toString();
+
+        Batch full = null;
+
+        synchronized (this) {
+
+            Batch batch = this.batches.get(key);
+
+            if (batch == null) {
+
+                batch = new Batch(key);
+                this.batches.put(key, batch);
+                batch.linger = this.scheduler.schedule(new LingerTask(batch), 
+                                                       this.lingerTimeInMillis, 
+                                                       TimeUnit.MILLISECONDS);
+            }
+
+            batch.statements.add(statement);
+
+            if (batch.statements.size() >= this.batchSize) {
+
+                this.batches.remove(key);
+                batch.linger.cancel(false);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            dispatch(full, true);
+        }
+    }
+
+    /**
+     * Sends all the batches being filled.
+     */
+    private void sendPendingBatches() {
+
+        List<Batch> pending;
+
+        synchronized (this) {
+
+            pending = new ArrayList<>(this.batches.values());
+            this.batches.clear();
+        }
+
+        for (Batch batch : pending) {
+
+            batch.linger.cancel(false);
+            dispatch(batch, true);
+        }
+    }
+
+    /**
+     * Counts the specified batch as in flight and hands it over to its sender.
+     * 
+     * @param batch the batch to send
+     * @param wait <code>true</code> if the calling thread must wait until the number of batches in flight
+     * is below the bound, <code>false</code> if the batch must be counted without waiting
+     */
+    private void dispatch(final Batch batch, boolean wait) {
+
+        acquire(wait);
+
+        ExecutorService sender = this.senders[(batch.key.hashCode() & Integer.MAX_VALUE) % this.senders.length];
+
+        sender.execute(new Runnable() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    execute(batch);
+
+                } catch (RuntimeException | IOException e) {
+
+                    BatchingWriter.this.failures.add(e);
+
+                } finally {
+
+                    release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Executes the statements of the specified batch.
+     * 
+     * @param batch the batch to execute
+     * @throws IOException if a problem occurs while closing the connection
+     */
+    private void execute(Batch batch) throws IOException {
+
+        try (Connection connection = this.client.newConnection()) {
+
+            for (RecordSet recordSet : connection.executePipelined(batch.statements)) {
+                recordSet.close();
+            }
+        }
+    }
+
+    /**
+     * Waits until all the batches handed over to the senders have been processed. As each sender executes
+     * its tasks in order, a task submitted to every sender completes once the batches submitted before it 
+     * have been sent.
+     */
+    private void awaitSentBatches() {
+
+        List<Future<?>> barriers = new ArrayList<>(this.senders.length);
+
+        for (ExecutorService sender : this.senders) {
+
+            barriers.add(sender.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                }
+            }));
+        }
+
+        try {
+
+            for (Future<?> barrier : barriers) {
+                barrier.get();
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new HorizonDBException("", e);
+
+        } catch (ExecutionException e) {
+
+            throw new HorizonDBException("", e.getCause());
+        }
+    }
+
+    /**
+     * Waits until the number of batches in flight is below the bound.
+     */
+    private void awaitWindow() {
+
+        this.inFlightLock.lock();
+
+        try {
+
+            awaitBatchProcessed();
+
+        } finally {
+
+            this.inFlightLock.unlock();
+        }
+    }
+
+    /**
+     * Counts a new batch in flight.
+     * 
+     * @param wait <code>true</code> if the calling thread must first wait until the number of batches in 
+     * flight is below the bound
+     */
+    private void acquire(boolean wait) {
+
+        this.inFlightLock.lock();
+
+        try {
+
+            if (wait) {
+                awaitBatchProcessed();
+            }
+
+            this.inFlightBatches++;
+
+        } finally {
+
+            this.inFlightLock.unlock();
+        }
+    }
+
+    /**
+     * Notification that a batch in flight has been processed.
+     */
+    private void release() {
+
+        this.inFlightLock.lock();
+
+        try {
+
+            this.inFlightBatches--;
+            this.batchProcessed.signalAll();
+
+        } finally {
+
+            this.inFlightLock.unlock();
+        }
+    }
+
+    /**
+     * Waits, while holding the in-flight lock, until the number of batches in flight is below the bound.
+     */
+    private void awaitBatchProcessed() {
+
+        try {
+
+            while (this.inFlightBatches >= this.maxInFlightBatches) {
+                this.batchProcessed.await();
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new HorizonDBException("", e);
+        }
+    }
+
+    /**
+     * Checks that this writer is not closed and that no batch has failed.
+     */
+    private void checkState() {
+
+        if (this.closed) {
+            throw new HorizonDBException("The writer has been closed.");
+        }
+
+        checkFailure();
+    }
+
+    /**
+     * Throws the failures of the batches that failed if any.
+     */
+    private void checkFailure() {
+
+        Throwable cause = this.failures.poll();
+
+        if (cause == null) {
+            return;
+        }
+
+        HorizonDBException exception = new HorizonDBException("A batch of inserts could not be executed.", cause);
+
+        Throwable other;
+
+        while ((other = this.failures.poll()) != null) {
+            exception.addSuppressed(other);
+        }
+
+        throw exception;
+    }
+
+    /**
+     * Creates a new <code>BatchingWriter</code> using the specified builder configuration.
+     * 
+     * @param builder the builder
+     */
+    private BatchingWriter(Builder builder) {
+
+        this.client = builder.client;
+        this.database = builder.database;
+        this.batchSize = builder.batchSize;
+        this.lingerTimeInMillis = builder.lingerTimeInMillis;
+        this.maxInFlightBatches = builder.maxInFlightBatches;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("horizondb-linger",
+                                                                                             true));
+        this.senders = new ExecutorService[builder.senderThreads];
+
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory("horizondb-writer", true);
+
+        for (int i = 0; i < this.senders.length; i++) {
+            this.senders[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * Task sending a batch once it has reached its linger time.
+     */
+    private final class LingerTask implements Runnable {
+
+        /**
+         * The batch to send.
+         */
+        private final Batch batch;
+
+        public LingerTask(Batch batch) {
+            this.batch = batch;
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>The single linger thread must never block, so the batch is counted in flight and handed over to
+         * its sender without waiting. The batch is dispatched under the lock, so a concurrent flush either 
+         * sends it itself or waits for it.</p>
+         */
+        @Override
+        public void run() {
+
+            synchronized (BatchingWriter.this) {
+
+                if (BatchingWriter.this.batches.get(this.batch.key) != this.batch) {
+                    return;
+                }
+
+                BatchingWriter.this.batches.remove(this.batch.key);
+                dispatch(this.batch, false);
+            }
+        }
+    }
+
+    /**
+     * The inserts of a given record type being accumulated.
+     */
+    private static final class Batch {
+
+        /**
+         * The record type key.
+         */
+        private final String key;
+
+        /**
+         * The insert statements.
+         */
+        private final List<String> statements = new ArrayList<>();
+
+        /**
+         * The task that will send this batch once the linger time is reached.
+         */
+        private ScheduledFuture<?> linger;
+
+        public Batch(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * The <code>BatchingWriter</code> builder.
+     */
+    public static final class Builder {
+
+        /**
+         * The default maximum number of records per batch.
+         */
+        private static final int DEFAULT_BATCH_SIZE = 500;
+
+        /**
+         * The default linger time of 10 milliseconds.
+         */
+        private static final long DEFAULT_LINGER_TIME = 10;
+
+        /**
+         * The default maximum number of batches in flight.
+         */
+        private static final int DEFAULT_MAX_IN_FLIGHT_BATCHES = 16;
+
+        /**
+         * The default number of threads sending the batches.
+         */
+        private static final int DEFAULT_SENDER_THREADS = 4;
+
+        /**
+         * The client used to send the batches.
+         */
+        private final HorizonDB client;
+
+        /**
+         * The database in which the records are inserted.
+         */
+        private final String database;
+
+        /**
+         * The maximum number of records per batch.
+         */
+        private int batchSize = DEFAULT_BATCH_SIZE;
+
+        /**
+         * The linger time in milliseconds.
+         */
+        private long lingerTimeInMillis = DEFAULT_LINGER_TIME;
+
+        /**
+         * The maximum number of batches in flight.
+         */
+        private int maxInFlightBatches = DEFAULT_MAX_IN_FLIGHT_BATCHES;
+
+        /**
+         * The number of threads sending the batches.
+         */
+        private int senderThreads = DEFAULT_SENDER_THREADS;
+
+        /**
+         * Sets the maximum number of records per batch.
+         * 
+         * @param batchSize the maximum number of records per batch
+         * @return this builder
+         */
+        public Builder setBatchSize(int batchSize) {
+
+            isTrue(batchSize > 0, "the batch size must be strictly greater than zero.");
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a record can wait before its batch is sent.
+         * 
+         * @param lingerTimeInMillis the linger time in milliseconds
+         * @return this builder
+         */
+        public Builder setLingerTimeInMillis(long lingerTimeInMillis) {
+
+            isTrue(lingerTimeInMillis >= 0, "the linger time must be positive.");
+            this.lingerTimeInMillis = lingerTimeInMillis;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of batches sent or waiting to be sent before the inserting threads 
+         * are blocked.
+         * 
+         * @param maxInFlightBatches the maximum number of batches in flight
+         * @return this builder
+         */
+        public Builder setMaxInFlightBatches(int maxInFlightBatches) {
+
+            isTrue(maxInFlightBatches > 0, "the maximum number of batches in flight must be strictly greater than zero.");
+            this.maxInFlightBatches = maxInFlightBatches;
+            return this;
+        }
+
+        /**
+         * Sets the number of threads sending the batches.
+         * 
+         * @param senderThreads the number of threads sending the batches
+         * @return this builder
+         */
+        public Builder setSenderThreads(int senderThreads) {
+
+            isTrue(senderThreads > 0, "the number of sender threads must be strictly greater than zero.");
+            this.senderThreads = senderThreads;
+            return this;
+        }
+
+        /**
+         * Builds a new <code>BatchingWriter</code> instance.
+         * 
+         * @return a new <code>BatchingWriter</code> instance.
+         */
+        public BatchingWriter build() {
+
+            return new BatchingWriter(this);
+        }
+
+        private Builder(HorizonDB client, String database) {
+
+            notNull(client, "the client must not be null.");
+            notEmpty(database, "the database must not be empty.");
+
+            this.client = client;
+            this.database = database;
+        }
+    }
+}
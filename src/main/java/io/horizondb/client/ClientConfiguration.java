@@ -32,7 +32,42 @@ final class ClientConfiguration {
     /**
      * The default timeout of 30 seconds.
      */
-    private static final int DEFAULT_TIMEOUT = 30;
+    private static final long DEFAULT_TIMEOUT_IN_MILLIS = 30000;
+
+    /**
+     * The default maximum number of connections per client.
+     */
+    private static final int DEFAULT_MAX_POOL_SIZE = 16;
+
+    /**
+     * The default maximum idle time of 60 seconds.
+     */
+    private static final int DEFAULT_MAX_IDLE_TIME = 60;
+
+    /**
+     * The default maximum number of buffered messages per connection before the reading is suspended.
+     */
+    private static final int DEFAULT_HIGH_WATER_MARK_IN_MESSAGES = 64;
+
+    /**
+     * The default number of buffered messages below which the reading is resumed.
+     */
+    private static final int DEFAULT_LOW_WATER_MARK_IN_MESSAGES = 16;
+
+    /**
+     * The default maximum number of buffered bytes per connection (16MB) before the reading is suspended.
+     */
+    private static final long DEFAULT_HIGH_WATER_MARK_IN_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * The default number of buffered bytes (4MB) below which the reading is resumed.
+     */
+    private static final long DEFAULT_LOW_WATER_MARK_IN_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * The default maximum number of threads decoding the data chunks ahead of the consumers.
+     */
+    private static final int DEFAULT_MAX_PREFETCH_THREADS = 16;
 
     /**
      * The address of the server.
@@ -40,9 +75,89 @@ final class ClientConfiguration {
     private final InetSocketAddress hostAddress;
     
     /**
-     * The query timeout in second.
+     * The query timeout in milliseconds.
+     */
+    private long queryTimeoutInMillis = DEFAULT_TIMEOUT_IN_MILLIS;
+
+    /**
+     * The minimum number of connections kept open by the pool.
+     */
+    private int minPoolSize;
+
+    /**
+     * The maximum number of connections that can be opened by the pool.
+     */
+    private int maxPoolSize = DEFAULT_MAX_POOL_SIZE;
+
+    /**
+     * The time in seconds after which an idle connection is closed.
+     */
+    private int maxIdleTimeInSeconds = DEFAULT_MAX_IDLE_TIME;
+
+    /**
+     * The maximum amount of time in seconds to wait for a connection to become available.
      */
-    private int queryTimeoutInSeconds = DEFAULT_TIMEOUT;
+    private int borrowTimeoutInSeconds = DEFAULT_TIMEOUT;
+
+    /**
+     * The number of buffered messages above which the reading of the socket is suspended.
+     */
+    private int highWaterMarkInMessages = DEFAULT_HIGH_WATER_MARK_IN_MESSAGES;
+
+    /**
+     * The number of buffered messages below which the reading of the socket is resumed.
+     */
+    private int lowWaterMarkInMessages = DEFAULT_LOW_WATER_MARK_IN_MESSAGES;
+
+    /**
+     * The number of buffered bytes above which the reading of the socket is suspended.
+     */
+    private long highWaterMarkInBytes = DEFAULT_HIGH_WATER_MARK_IN_BYTES;
+
+    /**
+     * The number of buffered bytes below which the reading of the socket is resumed.
+     */
+    private long lowWaterMarkInBytes = DEFAULT_LOW_WATER_MARK_IN_BYTES;
+
+    /**
+     * The number of data chunks decoded ahead of the consumer, 0 if the prefetching is disabled.
+     */
+    private int prefetchDepthInChunks;
+
+    /**
+     * <code>true</code> if the network buffers are allocated from a pool.
+     */
+    private boolean pooledBuffers = true;
+
+    /**
+     * The network transport.
+     */
+    private Transport transport = Transport.NIO;
+
+    /**
+     * The shared I/O threads or <code>null</code> if the client must use its own threads.
+     */
+    private EventLoopResource eventLoopResource;
+
+    /**
+     * The TCP keep-alive idle time in seconds, 0 if the TCP keep-alive is disabled.
+     */
+    private int tcpKeepIdleInSeconds;
+
+    /**
+     * The interval in seconds between the TCP keep-alive probes, 0 for the system default.
+     */
+    private int tcpKeepIntervalInSeconds;
+
+    /**
+     * The number of TCP keep-alive probes before the connection is dropped, 0 for the system default.
+     */
+    private int tcpKeepCount;
+
+    /**
+     * The maximum number of threads decoding the data chunks ahead of the consumers.
+     */
+    private int maxPrefetchThreads = DEFAULT_MAX_PREFETCH_THREADS;
     
     /**
      * Creates a new <code>ClientConfiguration</code> instance.
@@ -65,21 +180,309 @@ final class ClientConfiguration {
     }
 
 	/**
-	 * Returns the query timeout in seconds.
+	 * Returns the query timeout in milliseconds.
 	 * 
-	 * @return the query timeout in seconds.
+	 * @return the query timeout in milliseconds.
 	 */
-	public int getQueryTimeoutInSeconds() {
-		return this.queryTimeoutInSeconds;
+	public long getQueryTimeoutInMillis() {
+		return this.queryTimeoutInMillis;
 	}
 	
 	/**
-	 * Sets the query timeout in seconds.
+	 * Sets the query timeout in milliseconds.
 	 * 
-	 * @param queryTimeout the new query timeout in seconds.
+	 * @param queryTimeoutInMillis the new query timeout in milliseconds.
 	 */
-    public void setQueryTimeoutInSeconds(int queryTimeoutInSeconds) {
-	    this.queryTimeoutInSeconds = queryTimeoutInSeconds;
+    public void setQueryTimeoutInMillis(long queryTimeoutInMillis) {
+	    this.queryTimeoutInMillis = queryTimeoutInMillis;
+    }
+
+    /**
+     * Returns the minimum number of connections kept open by the pool.
+     * 
+     * @return the minimum number of connections kept open by the pool.
+     */
+    public int getMinPoolSize() {
+        return this.minPoolSize;
+    }
+
+    /**
+     * Sets the minimum number of connections kept open by the pool.
+     * 
+     * @param minPoolSize the minimum number of connections kept open by the pool.
+     */
+    public void setMinPoolSize(int minPoolSize) {
+        this.minPoolSize = minPoolSize;
+    }
+
+    /**
+     * Returns the maximum number of connections that can be opened by the pool.
+     * 
+     * @return the maximum number of connections that can be opened by the pool.
+     */
+    public int getMaxPoolSize() {
+        return this.maxPoolSize;
+    }
+
+    /**
+     * Sets the maximum number of connections that can be opened by the pool.
+     * 
+     * @param maxPoolSize the maximum number of connections that can be opened by the pool.
+     */
+    public void setMaxPoolSize(int maxPoolSize) {
+        this.maxPoolSize = maxPoolSize;
+    }
+
+    /**
+     * Returns the time in seconds after which an idle connection is closed.
+     * 
+     * @return the time in seconds after which an idle connection is closed.
+     */
+    public int getMaxIdleTimeInSeconds() {
+        return this.maxIdleTimeInSeconds;
+    }
+
+    /**
+     * Sets the time in seconds after which an idle connection is closed.
+     * 
+     * @param maxIdleTimeInSeconds the time in seconds after which an idle connection is closed.
+     */
+    public void setMaxIdleTimeInSeconds(int maxIdleTimeInSeconds) {
+        this.maxIdleTimeInSeconds = maxIdleTimeInSeconds;
+    }
+
+    /**
+     * Returns the maximum amount of time in seconds to wait for a connection to become available.
+     * 
+     * @return the maximum amount of time in seconds to wait for a connection to become available.
+     */
+    public int getBorrowTimeoutInSeconds() {
+        return this.borrowTimeoutInSeconds;
+    }
+
+    /**
+     * Sets the maximum amount of time in seconds to wait for a connection to become available.
+     * 
+     * @param borrowTimeoutInSeconds the maximum amount of time in seconds to wait for a connection.
+     */
+    public void setBorrowTimeoutInSeconds(int borrowTimeoutInSeconds) {
+        this.borrowTimeoutInSeconds = borrowTimeoutInSeconds;
+    }
+
+    /**
+     * Returns the number of buffered messages above which the reading of the socket is suspended.
+     * 
+     * @return the number of buffered messages above which the reading of the socket is suspended.
+     */
+    public int getHighWaterMarkInMessages() {
+        return this.highWaterMarkInMessages;
+    }
+
+    /**
+     * Sets the number of buffered messages above which the reading of the socket is suspended.
+     * 
+     * @param highWaterMarkInMessages the number of buffered messages above which the reading of the socket is suspended.
+     */
+    public void setHighWaterMarkInMessages(int highWaterMarkInMessages) {
+        this.highWaterMarkInMessages = highWaterMarkInMessages;
+    }
+
+    /**
+     * Returns the number of buffered messages below which the reading of the socket is resumed.
+     * 
+     * @return the number of buffered messages below which the reading of the socket is resumed.
+     */
+    public int getLowWaterMarkInMessages() {
+        return this.lowWaterMarkInMessages;
+    }
+
+    /**
+     * Sets the number of buffered messages below which the reading of the socket is resumed.
+     * 
+     * @param lowWaterMarkInMessages the number of buffered messages below which the reading of the socket is resumed.
+     */
+    public void setLowWaterMarkInMessages(int lowWaterMarkInMessages) {
+        this.lowWaterMarkInMessages = lowWaterMarkInMessages;
+    }
+
+    /**
+     * Returns the number of buffered bytes above which the reading of the socket is suspended.
+     * 
+     * @return the number of buffered bytes above which the reading of the socket is suspended.
+     */
+    public long getHighWaterMarkInBytes() {
+        return this.highWaterMarkInBytes;
+    }
+
+    /**
+     * Sets the number of buffered bytes above which the reading of the socket is suspended.
+     * 
+     * @param highWaterMarkInBytes the number of buffered bytes above which the reading of the socket is suspended.
+     */
+    public void setHighWaterMarkInBytes(long highWaterMarkInBytes) {
+        this.highWaterMarkInBytes = highWaterMarkInBytes;
+    }
+
+    /**
+     * Returns the number of buffered bytes below which the reading of the socket is resumed.
+     * 
+     * @return the number of buffered bytes below which the reading of the socket is resumed.
+     */
+    public long getLowWaterMarkInBytes() {
+        return this.lowWaterMarkInBytes;
+    }
+
+    /**
+     * Sets the number of buffered bytes below which the reading of the socket is resumed.
+     * 
+     * @param lowWaterMarkInBytes the number of buffered bytes below which the reading of the socket is resumed.
+     */
+    public void setLowWaterMarkInBytes(long lowWaterMarkInBytes) {
+        this.lowWaterMarkInBytes = lowWaterMarkInBytes;
+    }
+
+    /**
+     * Returns the number of data chunks decoded ahead of the consumer, 0 if the prefetching is disabled.
+     * 
+     * @return the number of data chunks decoded ahead of the consumer, 0 if the prefetching is disabled.
+     */
+    public int getPrefetchDepthInChunks() {
+        return this.prefetchDepthInChunks;
+    }
+
+    /**
+     * Sets the number of data chunks decoded ahead of the consumer, 0 if the prefetching is disabled.
+     * 
+     * @param prefetchDepthInChunks the number of data chunks decoded ahead of the consumer, 0 if the prefetching is disabled.
+     */
+    public void setPrefetchDepthInChunks(int prefetchDepthInChunks) {
+        this.prefetchDepthInChunks = prefetchDepthInChunks;
+    }
+
+    /**
+     * Returns <code>true</code> if the network buffers are allocated from a pool.
+     * 
+     * @return <code>true</code> if the network buffers are allocated from a pool.
+     */
+    public boolean isPooledBuffers() {
+        return this.pooledBuffers;
+    }
+
+    /**
+     * Specifies if the network buffers must be allocated from a pool.
+     * 
+     * @param pooledBuffers <code>true</code> if the network buffers must be allocated from a pool.
+     */
+    public void setPooledBuffers(boolean pooledBuffers) {
+        this.pooledBuffers = pooledBuffers;
+    }
+
+    /**
+     * Returns the network transport.
+     * 
+     * @return the network transport.
+     */
+    public Transport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Sets the network transport.
+     * 
+     * @param transport the network transport.
+     */
+    public void setTransport(Transport transport) {
+        this.transport = transport;
+    }
+
+    /**
+     * Returns the shared I/O threads or <code>null</code> if the client must use its own threads.
+     * 
+     * @return the shared I/O threads or <code>null</code> if the client must use its own threads.
+     */
+    public EventLoopResource getEventLoopResource() {
+        return this.eventLoopResource;
+    }
+
+    /**
+     * Sets the shared I/O threads or <code>null</code> if the client must use its own threads.
+     * 
+     * @param eventLoopResource the shared I/O threads or <code>null</code> if the client must use its own threads.
+     */
+    public void setEventLoopResource(EventLoopResource eventLoopResource) {
+        this.eventLoopResource = eventLoopResource;
+    }
+
+    /**
+     * Returns the TCP keep-alive idle time in seconds, 0 if the TCP keep-alive is disabled.
+     * 
+     * @return the TCP keep-alive idle time in seconds, 0 if the TCP keep-alive is disabled.
+     */
+    public int getTcpKeepIdleInSeconds() {
+        return this.tcpKeepIdleInSeconds;
+    }
+
+    /**
+     * Sets the TCP keep-alive idle time in seconds, 0 if the TCP keep-alive is disabled.
+     * 
+     * @param tcpKeepIdleInSeconds the TCP keep-alive idle time in seconds, 0 if the TCP keep-alive is disabled.
+     */
+    public void setTcpKeepIdleInSeconds(int tcpKeepIdleInSeconds) {
+        this.tcpKeepIdleInSeconds = tcpKeepIdleInSeconds;
+    }
+
+    /**
+     * Returns the interval in seconds between the TCP keep-alive probes, 0 for the system default.
+     * 
+     * @return the interval in seconds between the TCP keep-alive probes, 0 for the system default.
+     */
+    public int getTcpKeepIntervalInSeconds() {
+        return this.tcpKeepIntervalInSeconds;
+    }
+
+    /**
+     * Sets the interval in seconds between the TCP keep-alive probes, 0 for the system default.
+     * 
+     * @param tcpKeepIntervalInSeconds the interval in seconds between the TCP keep-alive probes, 0 for the system default.
+     */
+    public void setTcpKeepIntervalInSeconds(int tcpKeepIntervalInSeconds) {
+        this.tcpKeepIntervalInSeconds = tcpKeepIntervalInSeconds;
+    }
+
+    /**
+     * Returns the number of TCP keep-alive probes before the connection is dropped, 0 for the system default.
+     * 
+     * @return the number of TCP keep-alive probes before the connection is dropped, 0 for the system default.
+     */
+    public int getTcpKeepCount() {
+        return this.tcpKeepCount;
+    }
+
+    /**
+     * Sets the number of TCP keep-alive probes before the connection is dropped, 0 for the system default.
+     * 
+     * @param tcpKeepCount the number of TCP keep-alive probes before the connection is dropped, 0 for the system default.
+     */
+    public void setTcpKeepCount(int tcpKeepCount) {
+        this.tcpKeepCount = tcpKeepCount;
+    }
+
+    /**
+     * Returns the maximum number of threads decoding the data chunks ahead of the consumers.
+     * 
+     * @return the maximum number of threads decoding the data chunks ahead of the consumers.
+     */
+    public int getMaxPrefetchThreads() {
+        return this.maxPrefetchThreads;
+    }
+
+    /**
+     * Sets the maximum number of threads decoding the data chunks ahead of the consumers.
+     * 
+     * @param maxPrefetchThreads the maximum number of threads decoding the data chunks ahead of the consumers.
+     */
+    public void setMaxPrefetchThreads(int maxPrefetchThreads) {
+        this.maxPrefetchThreads = maxPrefetchThreads;
     }
 
     /**
@@ -96,7 +499,23 @@ final class ClientConfiguration {
         ClientConfiguration rhs = (ClientConfiguration) object;
         
         return new EqualsBuilder().append(this.hostAddress, rhs.hostAddress)
-                                  .append(this.queryTimeoutInSeconds, rhs.queryTimeoutInSeconds)
+                                  .append(this.queryTimeoutInMillis, rhs.queryTimeoutInMillis)
+                                  .append(this.minPoolSize, rhs.minPoolSize)
+                                  .append(this.maxPoolSize, rhs.maxPoolSize)
+                                  .append(this.maxIdleTimeInSeconds, rhs.maxIdleTimeInSeconds)
+                                  .append(this.borrowTimeoutInSeconds, rhs.borrowTimeoutInSeconds)
+                                  .append(this.highWaterMarkInMessages, rhs.highWaterMarkInMessages)
+                                  .append(this.lowWaterMarkInMessages, rhs.lowWaterMarkInMessages)
+                                  .append(this.highWaterMarkInBytes, rhs.highWaterMarkInBytes)
+                                  .append(this.lowWaterMarkInBytes, rhs.lowWaterMarkInBytes)
+                                  .append(this.prefetchDepthInChunks, rhs.prefetchDepthInChunks)
+                                  .append(this.pooledBuffers, rhs.pooledBuffers)
+                                  .append(this.transport, rhs.transport)
+                                  .append(this.eventLoopResource, rhs.eventLoopResource)
+                                  .append(this.tcpKeepIdleInSeconds, rhs.tcpKeepIdleInSeconds)
+                                  .append(this.tcpKeepIntervalInSeconds, rhs.tcpKeepIntervalInSeconds)
+                                  .append(this.tcpKeepCount, rhs.tcpKeepCount)
+                                  .append(this.maxPrefetchThreads, rhs.maxPrefetchThreads)
                                   .isEquals();
     }
 
@@ -106,7 +525,23 @@ final class ClientConfiguration {
     @Override
     public int hashCode() {
         return new HashCodeBuilder(-663727339, 695305331).append(this.hostAddress)
-                                                         .append(this.queryTimeoutInSeconds)
+                                                         .append(this.queryTimeoutInMillis)
+                                                         .append(this.minPoolSize)
+                                                         .append(this.maxPoolSize)
+                                                         .append(this.maxIdleTimeInSeconds)
+                                                         .append(this.borrowTimeoutInSeconds)
+                                                         .append(this.highWaterMarkInMessages)
+                                                         .append(this.lowWaterMarkInMessages)
+                                                         .append(this.highWaterMarkInBytes)
+                                                         .append(this.lowWaterMarkInBytes)
+                                                         .append(this.prefetchDepthInChunks)
+                                                         .append(this.pooledBuffers)
+                                                         .append(this.transport)
+                                                         .append(this.eventLoopResource)
+                                                         .append(this.tcpKeepIdleInSeconds)
+                                                         .append(this.tcpKeepIntervalInSeconds)
+                                                         .append(this.tcpKeepCount)
+                                                         .append(this.maxPrefetchThreads)
                                                          .toHashCode();
     }/**
      * {@inheritDoc}
@@ -115,8 +550,26 @@ final class ClientConfiguration {
     public String toString() {
         
         return new ToStringBuilder(this, ToStringStyle.SHORT_PREFIX_STYLE).append("hostAddress", this.hostAddress)
-                                                                          .append("queryTimeoutInSeconds", 
-                                                                                  this.queryTimeoutInSeconds)
+                                                                          .append("queryTimeoutInMillis", 
+                                                                                  this.queryTimeoutInMillis)
+                                                                          .append("minPoolSize", this.minPoolSize)
+                                                                          .append("maxPoolSize", this.maxPoolSize)
+                                                                          .append("maxIdleTimeInSeconds",
+                                                                                  this.maxIdleTimeInSeconds)
+                                                                          .append("borrowTimeoutInSeconds",
+                                                                                  this.borrowTimeoutInSeconds)
+                                                                          .append("highWaterMarkInMessages", this.highWaterMarkInMessages)
+                                                                          .append("lowWaterMarkInMessages", this.lowWaterMarkInMessages)
+                                                                          .append("highWaterMarkInBytes", this.highWaterMarkInBytes)
+                                                                          .append("lowWaterMarkInBytes", this.lowWaterMarkInBytes)
+                                                                          .append("prefetchDepthInChunks", this.prefetchDepthInChunks)
+                                                                          .append("pooledBuffers", this.pooledBuffers)
+                                                                          .append("transport", this.transport)
+                                                                          .append("eventLoopResource", this.eventLoopResource)
+                                                                          .append("tcpKeepIdleInSeconds", this.tcpKeepIdleInSeconds)
+                                                                          .append("tcpKeepIntervalInSeconds", this.tcpKeepIntervalInSeconds)
+                                                                          .append("tcpKeepCount", this.tcpKeepCount)
+                                                                          .append("maxPrefetchThreads", this.maxPrefetchThreads)
                                                                           .toString();
     }
 }
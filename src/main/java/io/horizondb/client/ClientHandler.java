@@ -15,26 +15,190 @@
  */
 package io.horizondb.client;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.horizondb.io.Buffer;
 import io.horizondb.io.buffers.Buffers;
 import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.protocol.MsgHeader;
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 
+/**
+ * Routes the messages received from the server to the listener registered for their request ID.
+ * <p>
+ * The ownership of each frame is passed with its message to the listener, which must release it once the 
+ * message is no longer used. The frames of the messages that cannot be routed are released by the handler.
+ * </p>
+ * <p>
+ * The handler also keeps track of the messages that have been received but not yet consumed. Once the high
+ * water mark (in messages or in bytes) is exceeded, the reading of the socket is suspended until the 
+ * consumers have drained the buffered messages below the low water marks.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
 public class ClientHandler extends ChannelInboundHandlerAdapter {
 
 	/**
-	 * The queue used to store the server response.
+	 * The listeners of the requests in flight per request ID.
 	 */
-	private final BlockingQueue<Msg<?>> queue = new LinkedBlockingQueue<Msg<?>>(); 
+	private final ConcurrentMap<Long, MsgListener> listeners = new ConcurrentHashMap<>(); 
 	
-		
-    public BlockingQueue<Msg<?>> getQueue() {
-		return this.queue;
+	/**
+	 * The client configuration.
+	 */
+	private final ClientConfiguration configuration;
+	
+	/**
+	 * The number of messages received and not yet consumed.
+	 */
+	private final AtomicInteger bufferedMessages = new AtomicInteger();
+	
+	/**
+	 * The number of bytes received and not yet consumed.
+	 */
+	private final AtomicLong bufferedBytes = new AtomicLong();
+	
+	/**
+	 * <code>true</code> if the reading has been suspended because the high water mark has been exceeded.
+	 */
+	private final AtomicBoolean aboveHighWaterMark = new AtomicBoolean();
+	
+	/**
+	 * The number of reasons for which the reading of the socket is currently suspended.
+	 */
+	private final AtomicInteger suspensions = new AtomicInteger();
+	
+	/**
+	 * The channel to which this handler belongs.
+	 */
+	private volatile Channel channel;
+	
+	/**
+	 * Creates a new <code>ClientHandler</code> using the specified configuration.
+	 * 
+	 * @param configuration the client configuration
+	 */
+	public ClientHandler(ClientConfiguration configuration) {
+	    
+	    this.configuration = configuration;
+	}
+	
+	/**
+	 * Registers the specified listener for the responses to the request with the specified ID.
+	 * 
+	 * @param requestId the request ID
+	 * @param listener the listener
+	 */
+	void register(long requestId, MsgListener listener) {
+	    
+	    if (this.listeners.putIfAbsent(Long.valueOf(requestId), listener) != null) {
+	        throw new HorizonDBException("A request with the ID " + requestId + " is already in flight.");
+	    }
+	}
+	
+	/**
+	 * Unregisters the specified listener.
+	 * 
+	 * @param requestId the request ID
+	 * @param listener the listener
+	 */
+	void unregister(long requestId, MsgListener listener) {
+	    
+	    this.listeners.remove(Long.valueOf(requestId), listener);
+	}
+	
+	/**
+	 * Notification that a message of the specified size has been buffered by its listener.
+	 * 
+	 * @param size the message size in bytes
+	 */
+	void onBuffered(int size) {
+	    
+	    int messages = this.bufferedMessages.incrementAndGet();
+	    long bytes = this.bufferedBytes.addAndGet(size);
+	    
+	    if ((messages > this.configuration.getHighWaterMarkInMessages() 
+	            || bytes > this.configuration.getHighWaterMarkInBytes()) 
+	            && this.aboveHighWaterMark.compareAndSet(false, true)) {
+	        
+	        suspendReading();
+	    }
+	}
+	
+	/**
+	 * Notification that a buffered message of the specified size has been consumed.
+	 * 
+	 * @param size the message size in bytes
+	 */
+	void onConsumed(int size) {
+	    
+	    int messages = this.bufferedMessages.decrementAndGet();
+	    long bytes = this.bufferedBytes.addAndGet(-size);
+	    
+	    if (messages <= this.configuration.getLowWaterMarkInMessages() 
+	            && bytes <= this.configuration.getLowWaterMarkInBytes() 
+	            && this.aboveHighWaterMark.compareAndSet(true, false)) {
+	        
+	        resumeReading();
+	    }
+	}
+	
+	/**
+	 * Checks if no request is in flight on the channel and if all the messages received have been consumed.
+	 * As the water marks apply to the whole socket, a channel which is not idle must not be handed to 
+	 * another user, otherwise its requests could be blocked by the messages left unconsumed.
+	 * 
+	 * @return <code>true</code> if the channel is idle, <code>false</code> otherwise.
+	 */
+	boolean isIdle() {
+	    
+	    return this.listeners.isEmpty() && this.bufferedMessages.get() == 0 && this.suspensions.get() == 0;
+	}
+	
+	/**
+	 * Closes all the listeners still registered, releasing the messages that they have buffered.
+	 */
+	void closeListeners() {
+	    
+	    for (MsgListener listener : this.listeners.values()) {
+	        listener.close();
+	    }
+	}
+	
+	/**
+	 * Suspends the reading of the socket. The reading will only be resumed once <code>resumeReading</code> 
+	 * has been called as many times as <code>suspendReading</code>.
+	 */
+	void suspendReading() {
+	    
+	    if (this.suspensions.getAndIncrement() == 0) {
+	        this.channel.config().setAutoRead(false);
+	    }
+	}
+	
+	/**
+	 * Resumes the reading of the socket if nothing else requires it to be suspended.
+	 */
+	void resumeReading() {
+	    
+	    if (this.suspensions.decrementAndGet() == 0) {
+	        this.channel.config().setAutoRead(true);
+	    }
+	}
+	
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) {
+	    this.channel = ctx.channel();
 	}
 
 	@Override
@@ -44,20 +208,72 @@ public class ClientHandler extends ChannelInboundHandlerAdapter {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
 
-    	Buffer buffer = Buffers.wrap((ByteBuf) msg);
+    	ByteBuf frame = (ByteBuf) msg;
+    	int size = frame.readableBytes();
     	
-    	Msg<?> message = Msg.parseFrom(buffer);
+    	MsgListener listener = null;
     	
-    	this.queue.add(message);
-    
+    	try {
+    	    
+    	    Buffer buffer = Buffers.wrap(frame);
+    	    
+    	    MsgHeader header = MsgHeader.parseFrom(buffer);
+    	    
+    	    listener = this.listeners.get(Long.valueOf(header.getRequestId()));
+    	    
+    	    // The responses to requests that have been closed by the client, for example the remaining 
+    	    // chunks of a RecordSet closed before its end, are discarded without parsing their payload. 
+    	    // The payload of the other responses is parsed from where the header ends, so that the header
+    	    // is only parsed once.
+    	    if (listener != null) {
+    	        
+    	        listener.onMessage(Msg.parseFrom(header, buffer), frame, size);
+    	    }
+    	    
+    	} finally {
+    	    
+    	    if (listener == null) {
+    	        frame.release();
+    	    }
+    	}
     }
 
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        
+        failAll(new ConnectionFailureException("The connection to the server has been closed."));
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
-    	cause.printStackTrace();
+        
+        failAll(new ConnectionFailureException("The connection to the server has failed.", cause));
+        
+        // The connection is closed so that it is discarded by the pool.
+        ctx.close();
+    }
+    
+    /**
+     * Notifies all the listeners of the requests in flight of the specified failure. The listeners are
+     * removed, so that each of them is notified only once even if the channel becomes inactive after an 
+     * exception has been caught.
+     * 
+     * @param cause the failure
+     */
+    private void failAll(ConnectionFailureException cause) {
+        
+        Iterator<MsgListener> iterator = this.listeners.values().iterator();
+        
+        while (iterator.hasNext()) {
+            
+            MsgListener listener = iterator.next();
+            iterator.remove();
+            listener.onFailure(cause);
+        }
     }
 }
@@ -0,0 +1,577 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.model.core.Record;
+import io.horizondb.model.core.records.TimeSeriesRecord;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.apache.commons.lang.Validate.isTrue;
+
+/**
+ * Reusable batch of records of a single type decoded into primitive arrays, one array per declared 
+ * column.
+ * <p>
+ * The batch is filled by {@link RecordSet#nextBatch(ColumnBatch)}. Only the first {@link #size()} 
+ * elements of the arrays are valid. The arrays are allocated once and reused by the following calls.
+ * The columns must be declared before the batch is filled for the first time.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public final class ColumnBatch {
+
+    /**
+     * The kind of values that can be stored in a column.
+     */
+    private static enum Kind {
+        TIMESTAMP_IN_NANOS, TIMESTAMP_IN_MICROS, TIMESTAMP_IN_MILLIS, TIMESTAMP_IN_SECONDS, LONG, INT, BYTE,
+        DECIMAL, DOUBLE
+    }
+
+    /**
+     * The type of the records stored in this batch.
+     */
+    private final int recordType;
+
+    /**
+     * The maximum number of records stored in this batch.
+     */
+    private final int capacity;
+
+    /**
+     * The columns indexed by field.
+     */
+    private Column[] columnsByField = new Column[0];
+
+    /**
+     * The columns in declaration order.
+     */
+    private Column[] columns = new Column[0];
+
+    /**
+     * The number of records stored in this batch.
+     */
+    private int size;
+
+    /**
+     * <code>true</code> once the batch has been filled for the first time.
+     */
+    private boolean filled;
+
+    /**
+     * <code>true</code> if a decimal or a double column has been declared.
+     */
+    private boolean hasDecimalOrDoubleColumn;
+
+    /**
+     * Creates a new <code>ColumnBatch</code> that can store up to the specified number of records of the 
+     * specified type.
+     * 
+     * @param recordType the record type index
+     * @param capacity the maximum number of records stored in the batch
+     */
+    public ColumnBatch(int recordType, int capacity) {
+
+        isTrue(capacity > 0, "the capacity must be strictly greater than zero.");
+
+        this.recordType = recordType;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a column receiving the specified field as a time stamp in nanoseconds.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addTimestampInNanosColumn(int index) {
+        return addColumn(index, Kind.TIMESTAMP_IN_NANOS);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a time stamp in microseconds.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addTimestampInMicrosColumn(int index) {
+        return addColumn(index, Kind.TIMESTAMP_IN_MICROS);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a time stamp in milliseconds.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addTimestampInMillisColumn(int index) {
+        return addColumn(index, Kind.TIMESTAMP_IN_MILLIS);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a time stamp in seconds.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addTimestampInSecondsColumn(int index) {
+        return addColumn(index, Kind.TIMESTAMP_IN_SECONDS);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a <code>long</code>.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addLongColumn(int index) {
+        return addColumn(index, Kind.LONG);
+    }
+
+    /**
+     * Adds a column receiving the specified field as an <code>int</code>.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addIntColumn(int index) {
+        return addColumn(index, Kind.INT);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a <code>byte</code>.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addByteColumn(int index) {
+        return addColumn(index, Kind.BYTE);
+    }
+
+    /**
+     * Adds a column receiving the mantissas and the exponents of the specified decimal field.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addDecimalColumn(int index) {
+        return addColumn(index, Kind.DECIMAL);
+    }
+
+    /**
+     * Adds a column receiving the specified field as a <code>double</code>.
+     * 
+     * @param index the field index
+     * @return this <code>ColumnBatch</code>
+     */
+    public ColumnBatch addDoubleColumn(int index) {
+        return addColumn(index, Kind.DOUBLE);
+    }
+
+    /**
+     * Returns the type of the records stored in this batch.
+     * 
+     * @return the type of the records stored in this batch.
+     */
+    public int getRecordType() {
+        return this.recordType;
+    }
+
+    /**
+     * Returns the maximum number of records stored in this batch.
+     * 
+     * @return the maximum number of records stored in this batch.
+     */
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Returns the number of records stored in this batch.
+     * 
+     * @return the number of records stored in this batch.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the values of the specified timestamp or <code>long</code> column.
+     * 
+     * @param index the field index
+     * @return the values of the specified column.
+     */
+    public long[] getLongColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.longs != null, "The field " + index + " has not been declared as a timestamp or long column.");
+        return column.longs;
+    }
+
+    /**
+     * Returns the values of the specified <code>int</code> column.
+     * 
+     * @param index the field index
+     * @return the values of the specified column.
+     */
+    public int[] getIntColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.ints != null, "The field " + index + " has not been declared as an int column.");
+        return column.ints;
+    }
+
+    /**
+     * Returns the values of the specified <code>byte</code> column.
+     * 
+     * @param index the field index
+     * @return the values of the specified column.
+     */
+    public byte[] getByteColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.kind == Kind.BYTE, "The field " + index + " has not been declared as a byte column.");
+        return column.bytes;
+    }
+
+    /**
+     * Returns the mantissas of the specified decimal column.
+     * 
+     * @param index the field index
+     * @return the mantissas of the specified column.
+     */
+    public long[] getDecimalMantissaColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.kind == Kind.DECIMAL, "The field " + index + " has not been declared as a decimal column.");
+        return column.longs;
+    }
+
+    /**
+     * Returns the exponents of the specified decimal column.
+     * 
+     * @param index the field index
+     * @return the exponents of the specified column.
+     */
+    public byte[] getDecimalExponentColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.kind == Kind.DECIMAL, "The field " + index + " has not been declared as a decimal column.");
+        return column.bytes;
+    }
+
+    /**
+     * Returns the values of the specified <code>double</code> column.
+     * 
+     * @param index the field index
+     * @return the values of the specified column.
+     */
+    public double[] getDoubleColumn(int index) {
+
+        Column column = column(index);
+        isTrue(column.doubles != null, "The field " + index + " has not been declared as a double column.");
+        return column.doubles;
+    }
+
+    /**
+     * Removes all the records from this batch.
+     */
+    void clear() {
+        this.size = 0;
+        this.filled = true;
+    }
+
+    /**
+     * Returns <code>true</code> if the records can be decoded straight into the columns. The decimal 
+     * deltas are not supported yet, so the batches with a decimal or a double column are filled from the 
+     * decoded records. Summing the deltas as doubles would accumulate rounding errors, whereas the decoded
+     * records add the mantissas exactly.
+     * 
+     * @return <code>true</code> if the records can be decoded straight into the columns.
+     */
+    boolean isDirectlyDecodable() {
+        return !this.hasDecimalOrDoubleColumn;
+    }
+
+    /**
+     * Returns <code>true</code> if this batch cannot store any more records.
+     * 
+     * @return <code>true</code> if this batch cannot store any more records.
+     */
+    boolean isFull() {
+        return this.size == this.capacity;
+    }
+
+    /**
+     * Appends the declared fields of the specified record to the columns.
+     * 
+     * @param record the record to append
+     */
+    void add(TimeSeriesRecord record) {
+
+        int row = this.size;
+
+        for (int i = 0, m = this.columns.length; i < m; i++) {
+
+            Column column = this.columns[i];
+            int index = column.index;
+
+            switch (column.kind) {
+                case TIMESTAMP_IN_NANOS:
+                    column.longs[row] = record.getTimestampInNanos(index);
+                    break;
+                case TIMESTAMP_IN_MICROS:
+                    column.longs[row] = record.getTimestampInMicros(index);
+                    break;
+                case TIMESTAMP_IN_MILLIS:
+                    column.longs[row] = record.getTimestampInMillis(index);
+                    break;
+                case TIMESTAMP_IN_SECONDS:
+                    column.longs[row] = record.getTimestampInSeconds(index);
+                    break;
+                case LONG:
+                    column.longs[row] = record.getLong(index);
+                    break;
+                case INT:
+                    column.ints[row] = record.getInt(index);
+                    break;
+                case BYTE:
+                    column.bytes[row] = (byte) record.getByte(index);
+                    break;
+                case DECIMAL:
+                    column.longs[row] = record.getDecimalMantissa(index);
+                    column.bytes[row] = record.getDecimalExponent(index);
+                    break;
+                case DOUBLE:
+                    column.doubles[row] = record.getDouble(index);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown column kind: " + column.kind);
+            }
+        }
+
+        this.size++;
+    }
+
+    /**
+     * Resets the values to which the fields of the next delta record will be added to the values of the
+     * specified record.
+     * 
+     * @param record the record holding the last values of the fields
+     */
+    void seed(TimeSeriesRecord record) {
+
+        for (int i = 0, m = this.columns.length; i < m; i++) {
+
+            Column column = this.columns[i];
+            int index = column.index;
+
+            switch (column.kind) {
+                case TIMESTAMP_IN_NANOS:
+                    column.last = record.getTimestampInNanos(index);
+                    break;
+                case TIMESTAMP_IN_MICROS:
+                    column.last = record.getTimestampInMicros(index);
+                    break;
+                case TIMESTAMP_IN_MILLIS:
+                    column.last = record.getTimestampInMillis(index);
+                    break;
+                case TIMESTAMP_IN_SECONDS:
+                    column.last = record.getTimestampInSeconds(index);
+                    break;
+                case LONG:
+                    column.last = record.getLong(index);
+                    break;
+                case INT:
+                    column.last = record.getInt(index);
+                    break;
+                case BYTE:
+                    column.last = record.getByte(index);
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported column kind: " + column.kind);
+            }
+        }
+    }
+
+    /**
+     * Decodes the declared fields of the specified binary record straight into the columns. The fields of
+     * a delta record are added to the last values decoded. The other fields are not read.
+     * 
+     * @param record the binary record to decode
+     * @throws IOException if a problem occurs while reading the record
+     */
+    void decode(Record record) throws IOException {
+
+        int row = this.size;
+        boolean delta = record.isDelta();
+
+        for (int i = 0, m = this.columns.length; i < m; i++) {
+
+            Column column = this.columns[i];
+            int index = column.index;
+            long base = delta ? column.last : 0;
+
+            switch (column.kind) {
+                case TIMESTAMP_IN_NANOS:
+                    column.last = base + record.getTimestampInNanos(index);
+                    column.longs[row] = column.last;
+                    break;
+                case TIMESTAMP_IN_MICROS:
+                    column.last = base + record.getTimestampInMicros(index);
+                    column.longs[row] = column.last;
+                    break;
+                case TIMESTAMP_IN_MILLIS:
+                    column.last = base + record.getTimestampInMillis(index);
+                    column.longs[row] = column.last;
+                    break;
+                case TIMESTAMP_IN_SECONDS:
+                    column.last = base + record.getTimestampInSeconds(index);
+                    column.longs[row] = column.last;
+                    break;
+                case LONG:
+                    column.last = base + record.getLong(index);
+                    column.longs[row] = column.last;
+                    break;
+                case INT:
+                    column.last = (int) (base + record.getInt(index));
+                    column.ints[row] = (int) column.last;
+                    break;
+                case BYTE:
+                    column.last = (byte) (base + record.getByte(index));
+                    column.bytes[row] = (byte) column.last;
+                    break;
+                default:
+                    throw new IllegalStateException("Unsupported column kind: " + column.kind);
+            }
+        }
+
+        this.size++;
+    }
+
+    /**
+     * Adds a column of the specified kind for the specified field.
+     * 
+     * @param index the field index
+     * @param kind the kind of values stored in the column
+     * @return this <code>ColumnBatch</code>
+     */
+    private ColumnBatch addColumn(int index, Kind kind) {
+
+        isTrue(index >= 0, "the field index must be positive.");
+        isTrue(!this.filled, "The columns must be declared before the batch is filled for the first time.");
+
+        if (index >= this.columnsByField.length) {
+            this.columnsByField = Arrays.copyOf(this.columnsByField, index + 1);
+        }
+
+        isTrue(this.columnsByField[index] == null, "A column has already been declared for the field " + index);
+
+        Column column = new Column(index, kind, this.capacity);
+
+        this.columnsByField[index] = column;
+        this.columns = Arrays.copyOf(this.columns, this.columns.length + 1);
+        this.columns[this.columns.length - 1] = column;
+
+        if (kind == Kind.DECIMAL || kind == Kind.DOUBLE) {
+            this.hasDecimalOrDoubleColumn = true;
+        }
+
+        return this;
+    }
+
+    /**
+     * Returns the column of the specified field.
+     * 
+     * @param index the field index
+     * @return the column of the specified field
+     */
+    private Column column(int index) {
+
+        Column column = index >= 0 && index < this.columnsByField.length ? this.columnsByField[index] : null;
+        isTrue(column != null, "No column has been declared for the field " + index);
+        return column;
+    }
+
+    /**
+     * A column of values.
+     */
+    private static final class Column {
+
+        /**
+         * The field index.
+         */
+        private final int index;
+
+        /**
+         * The kind of values stored in the column.
+         */
+        private final Kind kind;
+
+        /**
+         * The values of the timestamp and long columns or the mantissas of the decimal columns.
+         */
+        private long[] longs;
+
+        /**
+         * The values of the int columns.
+         */
+        private int[] ints;
+
+        /**
+         * The values of the byte columns or the exponents of the decimal columns.
+         */
+        private byte[] bytes;
+
+        /**
+         * The values of the double columns.
+         */
+        private double[] doubles;
+
+        /**
+         * The last value decoded for the timestamp, long, int and byte columns.
+         */
+        private long last;
+
+        public Column(int index, Kind kind, int capacity) {
+
+            this.index = index;
+            this.kind = kind;
+
+            switch (kind) {
+                case INT:
+                    this.ints = new int[capacity];
+                    break;
+                case BYTE:
+                    this.bytes = new byte[capacity];
+                    break;
+                case DECIMAL:
+                    this.longs = new long[capacity];
+                    this.bytes = new byte[capacity];
+                    break;
+                case DOUBLE:
+                    this.doubles = new double[capacity];
+                    break;
+                default:
+                    this.longs = new long[capacity];
+            }
+        }
+    }
+}
@@ -13,10 +13,21 @@
  */
 package io.horizondb.client;
 
+import io.horizondb.model.core.Record;
+import io.netty.util.concurrent.Future;
+
 import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
 
 /**
  * A connection to the <code>HorizonDB</code> server.
+ * <p>
+ * A connection can be shared by several threads. The queries executed concurrently are multiplexed
+ * over the same socket.
+ * </p>
  * 
  * @author Benjamin
  */
@@ -36,4 +47,78 @@ public interface Connection extends Closeable {
      * @return the result returned by the server.
      */
     RecordSet execute(String query);
+    
+    /**
+     * Executes the specified HQL query with the specified timeout instead of the configured one.
+     * The timeout applies to each response awaited for the query, including the following data chunks
+     * of a streamed result.
+     * 
+     * @param query the HQL query to be executed
+     * @param timeout the query timeout
+     * @param unit the unit of the timeout
+     * @return the result returned by the server.
+     */
+    RecordSet execute(String query, long timeout, TimeUnit unit);
+    
+    /**
+     * Executes the specified HQL query without blocking the calling thread.
+     * <p>
+     * The returned future is completed by the I/O thread as soon as the first response is received. 
+     * The records of a streamed result must not be iterated from a listener of the future as fetching
+     * the following data chunks requires the I/O thread.
+     * </p>
+     * 
+     * @param query the HQL query to be executed
+     * @return the future result returned by the server.
+     */
+    Future<RecordSet> executeAsync(String query);
+    
+    /**
+     * Executes the specified HQL query without blocking the calling thread, with the specified timeout 
+     * instead of the configured one. If no response is received in time, the future is failed with a 
+     * <code>QueryTimeoutException</code>.
+     * 
+     * @param query the HQL query to be executed
+     * @param timeout the query timeout
+     * @param unit the unit of the timeout
+     * @return the future result returned by the server.
+     */
+    Future<RecordSet> executeAsync(String query, long timeout, TimeUnit unit);
+    
+    /**
+     * Executes the specified HQL queries in a pipeline: all the queries are written to the socket 
+     * back-to-back, without waiting for the response of the previous one, and the responses are then
+     * collected in order.
+     * <p>
+     * All the queries are sent with the database used by this connection at the time of the call. If one
+     * of the queries fails, the record sets already returned are closed and the error is thrown. The queries
+     * following the failed one might have been executed by the server.
+     * </p>
+     * <p>
+     * Until the header of the last query has been received, the results of the previous queries are 
+     * buffered in memory without being limited by the water marks of the connection.
+     * </p>
+     * 
+     * @param queries the HQL queries to be executed
+     * @return the results returned by the server, in the order of the queries.
+     */
+    List<RecordSet> executePipelined(List<String> queries);
+    
+    /**
+     * Prepares the specified HQL query for repeated executions with different parameter values.
+     * 
+     * @param query the HQL query with its parameter markers
+     * @return the prepared query
+     */
+    PreparedQuery prepare(String query);
+    
+    /**
+     * Returns a <code>Publisher</code> that will execute the specified HQL query when subscribed to and 
+     * will stream the returned records at the pace requested by its subscriber. The records passed to
+     * <code>onNext</code> are reused and must be copied with <code>newInstance</code> to be kept.
+     * 
+     * @param query the HQL query to be executed
+     * @return a <code>Publisher</code> of the records returned by the query.
+     */
+    Publisher<Record> publish(String query);
 }
@@ -17,17 +17,30 @@ package io.horizondb.client;
 
 import io.horizondb.model.protocol.MsgHeader;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 
 import java.io.Closeable;
-import java.net.InetSocketAddress;
+import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author Benjamin
@@ -37,19 +50,80 @@ class ConnectionManager implements Closeable {
 
 	private final ClientConfiguration configuration;
 
-	private final ResponseConverter converter = new ResponseConverterDispatcher();
+	private final ResponseConverter converter;
+	
+	/**
+	 * The executor decoding the data chunks ahead of the consumers, or <code>null</code> if the prefetching
+	 * is disabled.
+	 */
+	private final ExecutorService prefetchExecutor;
 	
 	private Bootstrap bootstrap;
 	
+	/**
+	 * The I/O threads, which are released when this manager is closed.
+	 */
+	private final EventLoopResource eventLoopResource;
+	
+	/**
+	 * The timer shared by all the connections to fail the asynchronous requests that time out.
+	 */
+	private final HashedWheelTimer timer = new HashedWheelTimer(new DefaultThreadFactory("horizondb-timer", true), 
+	                                                            10, 
+	                                                            TimeUnit.MILLISECONDS);
+	
+	/**
+	 * The pool of channels to the server.
+	 */
+	private final ConnectionPool pool;
+	
+	/**
+	 * <code>true</code> once this manager has been closed.
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean();
+	
 	/**
 	 * 
 	 */
 	public ConnectionManager(ClientConfiguration configuration) {
 
 		this.configuration = configuration;
-		this.bootstrap = new Bootstrap().group(new NioEventLoopGroup())
-		                                .channel(NioSocketChannel.class)
+		
+		if (configuration.getPrefetchDepthInChunks() > 0) {
+		    
+		    // The pool does not queue the tasks: when all its threads are busy, the records are decoded by 
+		    // the consumer thread, instead of waiting for another stream to be fully read.
+		    this.prefetchExecutor = new ThreadPoolExecutor(0, 
+		                                                   configuration.getMaxPrefetchThreads(), 
+		                                                   60, 
+		                                                   TimeUnit.SECONDS, 
+		                                                   new SynchronousQueue<Runnable>(), 
+		                                                   new DefaultThreadFactory("horizondb-prefetch", true));
+		    this.converter = new ResponseConverterDispatcher(new DataChunkResponseConverter(this.prefetchExecutor, 
+		                                                                                    configuration.getPrefetchDepthInChunks()));
+		} else {
+		    
+		    this.prefetchExecutor = null;
+		    this.converter = new ResponseConverterDispatcher();
+		}
+		
+		ByteBufAllocator allocator = configuration.isPooledBuffers() ? PooledByteBufAllocator.DEFAULT 
+		                                                             : UnpooledByteBufAllocator.DEFAULT;
+		
+		if (configuration.getEventLoopResource() != null) {
+		    
+		    this.eventLoopResource = configuration.getEventLoopResource().retain();
+		    
+		} else {
+		    
+		    this.eventLoopResource = new EventLoopResource(0, 
+		                                                   new DefaultThreadFactory("horizondb-io", true), 
+		                                                   configuration.getTransport());
+		}
+		
+		this.bootstrap = new Bootstrap().group(this.eventLoopResource.getGroup())
 		                                .option(ChannelOption.TCP_NODELAY, Boolean.TRUE)
+		                                .option(ChannelOption.ALLOCATOR, allocator)
 		                                .handler(new ChannelInitializer<SocketChannel>() {
 
 			                                @Override
@@ -67,25 +141,105 @@ class ConnectionManager implements Closeable {
 				                                                adjustment,
 				                                                0,
 				                                                true))
-				                                  .addLast("client", new ClientHandler())
+				                                  .addLast("client", new ClientHandler(ConnectionManager.this.configuration))
 				                                  ;
 			                                }
 		                                });
+		
+		if (configuration.getTcpKeepIdleInSeconds() > 0) {
+		    this.bootstrap.option(ChannelOption.SO_KEEPALIVE, Boolean.TRUE);
+		}
+		
+		// The epoll classes are only loaded if the epoll transport is used, as the dependency is optional.
+		if (this.eventLoopResource.isEpoll()) {
+		    EpollSupport.configure(this.bootstrap, configuration);
+		} else {
+		    this.bootstrap.channel(NioSocketChannel.class);
+		}
+		
+		this.pool = new ConnectionPool(configuration, this.bootstrap);
 	}	
 	
+	/**
+	 * Borrows a connection from the pool.
+	 * 
+	 * @return a connection to the server that will be returned to the pool when closed
+	 */
 	public Connection getSession() {
 		
-		return openConnection(this.configuration.getHostAddress());
+		Channel channel = this.pool.borrow();
+
+		return new DefaultConnection(this.configuration, channel, this.timer, this.converter, this.pool);
 	}
 	
-	private Connection openConnection(InetSocketAddress address) {
+	/**
+	 * Borrows a connection from the pool without blocking.
+	 * 
+	 * @return the future connection to the server
+	 */
+	public Future<Connection> getSessionAsync() {
+	    
+	    return getSessionAsync(null);
+	}
+	
+	/**
+	 * Borrows a connection from the pool without blocking and switches it to the specified database.
+	 * <p>
+	 * If an idle channel is available, the returned future is bound to the event loop of that channel, 
+	 * so that its listeners are notified from the thread that completes it.
+	 * </p>
+	 * 
+	 * @param database the database to use or <code>null</code> to keep the default one
+	 * @return the future connection to the server
+	 */
+	public Future<Connection> getSessionAsync(final String database) {
+	    
+	    Future<Channel> borrowed = this.pool.borrowAsync();
+	    
+	    EventExecutor executor = borrowed.isSuccess() ? borrowed.getNow().eventLoop() 
+	                                                  : this.bootstrap.group().next();
+	    
+	    final Promise<Connection> promise = executor.newPromise();
+	    
+	    borrowed.addListener(new FutureListener<Channel>() {
 
-		Channel channel = this.bootstrap.clone()
-		                                .connect(address)
-		                                .syncUninterruptibly()
-		                                .channel();
+	        @Override
+	        public void operationComplete(Future<Channel> future) {
 
-		return new DefaultConnection(this.configuration, channel, this.converter);
+	            if (!future.isSuccess()) {
+	                promise.setFailure(future.cause());
+	                return;
+	            }
+
+	            final Connection connection = new DefaultConnection(ConnectionManager.this.configuration, 
+	                                                                future.getNow(), 
+	                                                                ConnectionManager.this.timer,
+	                                                                ConnectionManager.this.converter, 
+	                                                                ConnectionManager.this.pool);
+	            
+	            if (database == null) {
+	                promise.setSuccess(connection);
+	                return;
+	            }
+	            
+	            connection.executeAsync("USE " + database + ";").addListener(new FutureListener<RecordSet>() {
+
+	                @Override
+	                public void operationComplete(Future<RecordSet> future) throws IOException {
+
+	                    if (future.isSuccess()) {
+	                        promise.setSuccess(connection);
+	                        return;
+	                    }
+	                    
+	                    connection.close();
+	                    promise.setFailure(future.cause());
+	                }
+	            });
+	        }
+	    });
+	    
+	    return promise;
 	}
 	
 	/**
@@ -94,6 +248,16 @@ class ConnectionManager implements Closeable {
     @Override
     public void close() {
     	
-    	this.bootstrap.group().shutdownGracefully();
+        if (!this.closed.compareAndSet(false, true)) {
+            return;
+        }
+        
+    	this.pool.close();
+    	this.eventLoopResource.release();
+    	this.timer.stop();
+    	
+    	if (this.prefetchExecutor != null) {
+    	    this.prefetchExecutor.shutdownNow();
+    	}
     }
 }
@@ -0,0 +1,669 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of channels to the server.
+ * <p>
+ * The pool keeps at least <code>minPoolSize</code> channels open and never opens more than
+ * <code>maxPoolSize</code> channels. Idle channels are reused in LIFO order so that the least recently
+ * used ones can be evicted once they have been idle for longer than the maximum idle time.
+ * </p>
+ *
+ * @author Benjamin
+ *
+ */
+final class ConnectionPool implements Closeable {
+
+    /**
+     * The client configuration.
+     */
+    private final ClientConfiguration configuration;
+
+    /**
+     * The bootstrap used to open new channels.
+     */
+    private final Bootstrap bootstrap;
+
+    /**
+     * All the channels opened by this pool, idle or borrowed.
+     */
+    private final ChannelGroup channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
+    /**
+     * The lock protecting the pool state.
+     */
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * The condition signaled each time a channel is released or a slot becomes free.
+     */
+    private final Condition available = this.lock.newCondition();
+
+    /**
+     * The idle channels, the most recently released one first.
+     */
+    private final Deque<IdleChannel> idleChannels = new ArrayDeque<>();
+
+    /**
+     * The asynchronous borrowers waiting for a channel.
+     */
+    private final Deque<Promise<Channel>> waiters = new ArrayDeque<>();
+
+    /**
+     * The task evicting the channels that have been idle for too long.
+     */
+    private final ScheduledFuture<?> evictionTask;
+
+    /**
+     * The number of channels opened or being opened by this pool.
+     */
+    private int size;
+
+    /**
+     * <code>true</code> if the pool has been closed.
+     */
+    private boolean closed;
+
+    /**
+     * Creates a new <code>ConnectionPool</code> that will open its channels using the specified bootstrap.
+     *
+     * @param configuration the client configuration
+     * @param bootstrap the bootstrap used to open new channels
+     */
+    public ConnectionPool(ClientConfiguration configuration, Bootstrap bootstrap) {
+
+        this.configuration = configuration;
+        this.bootstrap = bootstrap;
+
+        long period = Math.max(1, configuration.getMaxIdleTimeInSeconds());
+
+        this.evictionTask = bootstrap.group().scheduleWithFixedDelay(new Runnable() {
+
+            @Override
+            public void run() {
+                evictIdleChannels();
+            }
+
+        }, period, period, TimeUnit.SECONDS);
+
+        ensureMinPoolSize();
+    }
+
+    /**
+     * Borrows a channel from the pool. If no idle channel is available and the pool is full, waits for the
+     * borrow timeout for a channel to be released.
+     * <p>
+     * As this method blocks, it must not be called from an event loop thread, which could be the one that
+     * has to release or connect the channel. The event loop threads must use {@link #borrowAsync()} instead.
+     * </p>
+     *
+     * @return a valid channel
+     * @throws ConnectionFailureException if no channel could be obtained.
+     * @throws IllegalStateException if the method is called from an event loop thread.
+     */
+    public Channel borrow() {
+
+        if (inEventLoop()) {
+            throw new IllegalStateException("A channel cannot be borrowed synchronously from an event loop "
+                    + "thread, borrowAsync() must be used instead.");
+        }
+
+        long timeoutInNanos = TimeUnit.SECONDS.toNanos(this.configuration.getBorrowTimeoutInSeconds());
+        long deadline = System.nanoTime() + timeoutInNanos;
+
+        this.lock.lock();
+
+        try {
+
+            while (true) {
+
+                checkNotClosed();
+
+                IdleChannel idleChannel = this.idleChannels.pollFirst();
+
+                if (idleChannel != null) {
+
+                    if (isValid(idleChannel.channel)) {
+                        return idleChannel.channel;
+                    }
+
+                    discard(idleChannel.channel);
+                    continue;
+                }
+
+                if (this.size < this.configuration.getMaxPoolSize()) {
+                    this.size++;
+                    break;
+                }
+
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    throw new ConnectionFailureException("No connection became available within "
+                            + this.configuration.getBorrowTimeoutInSeconds() + " seconds.");
+                }
+
+                this.available.awaitNanos(remaining);
+            }
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new HorizonDBException("", e);
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        return connect();
+    }
+
+    /**
+     * Borrows a channel from the pool without blocking. If no idle channel is available and the pool is full,
+     * the returned future will be completed by the next channel released, or failed once the borrow timeout
+     * has elapsed.
+     *
+     * @return the future channel
+     */
+    public Future<Channel> borrowAsync() {
+
+        final Promise<Channel> promise = this.bootstrap.group().next().newPromise();
+
+        this.lock.lock();
+
+        try {
+
+            if (this.closed) {
+                return promise.setFailure(new ConnectionFailureException("The connection pool has been closed."));
+            }
+
+            Channel channel = null;
+            IdleChannel idleChannel;
+
+            while (channel == null && (idleChannel = this.idleChannels.pollFirst()) != null) {
+
+                if (isValid(idleChannel.channel)) {
+                    channel = idleChannel.channel;
+                } else {
+                    discard(idleChannel.channel);
+                }
+            }
+
+            if (channel != null) {
+
+                // The future is bound to the event loop of the channel, so that the listeners of the
+                // borrower run on the thread that will serve its requests.
+                return channel.eventLoop().newSucceededFuture(channel);
+            }
+
+            if (this.size >= this.configuration.getMaxPoolSize()) {
+
+                this.waiters.addLast(promise);
+                scheduleBorrowTimeout(promise);
+                return promise;
+            }
+
+            this.size++;
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        connectAsync(promise);
+        return promise;
+    }
+
+    /**
+     * Returns the specified channel to the pool.
+     *
+     * @param channel the channel being returned
+     */
+    public void release(Channel channel) {
+
+        Promise<Channel> waiter = null;
+        boolean reused = false;
+
+        this.lock.lock();
+
+        try {
+
+            if (this.closed || !isValid(channel)) {
+
+                discard(channel);
+                waiter = reserveSlotForWaiter();
+
+            } else {
+
+                this.idleChannels.addFirst(new IdleChannel(channel, System.nanoTime()));
+                waiter = this.waiters.pollFirst();
+                reused = true;
+            }
+
+            this.available.signal();
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        if (waiter != null) {
+
+            if (reused) {
+                handOver(waiter);
+            } else {
+                connectAsync(waiter);
+            }
+        }
+
+        ensureMinPoolSize();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+
+        this.lock.lock();
+
+        try {
+
+            this.closed = true;
+            this.idleChannels.clear();
+            this.available.signalAll();
+
+            for (Promise<Channel> waiter : this.waiters) {
+                waiter.tryFailure(new ConnectionFailureException("The connection pool has been closed."));
+            }
+
+            this.waiters.clear();
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        this.evictionTask.cancel(false);
+        this.channels.close().awaitUninterruptibly();
+    }
+
+    /**
+     * Opens a new channel to the server. The pool slot must have been reserved before calling this method.
+     *
+     * @return the new channel
+     */
+    private Channel connect() {
+
+        ChannelFuture future = this.bootstrap.connect(this.configuration.getHostAddress())
+                                             .awaitUninterruptibly();
+
+        if (!future.isSuccess()) {
+
+            freeSlot();
+            throw new ConnectionFailureException("Could not connect to the server: "
+                    + this.configuration.getHostAddress(), future.cause());
+        }
+
+        Channel channel = future.channel();
+        this.channels.add(channel);
+        return channel;
+    }
+
+    /**
+     * Opens asynchronously a new channel to the server and uses it to complete the specified promise. 
+     * The pool slot must have been reserved before calling this method.
+     *
+     * @param promise the promise to complete
+     */
+    private void connectAsync(final Promise<Channel> promise) {
+
+        this.bootstrap.connect(this.configuration.getHostAddress()).addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) {
+
+                if (!future.isSuccess()) {
+
+                    freeSlot();
+                    promise.tryFailure(new ConnectionFailureException("Could not connect to the server: "
+                            + ConnectionPool.this.configuration.getHostAddress(), future.cause()));
+                    return;
+                }
+
+                ConnectionPool.this.channels.add(future.channel());
+
+                if (!promise.trySuccess(future.channel())) {
+                    release(future.channel());
+                }
+            }
+        });
+    }
+
+    /**
+     * Completes the specified waiter with an idle channel. If the waiter has already timed out, 
+     * the channel stays in the pool.
+     *
+     * @param waiter the waiter to complete
+     */
+    private void handOver(Promise<Channel> waiter) {
+
+        Channel channel = null;
+
+        this.lock.lock();
+
+        try {
+
+            IdleChannel idleChannel = this.idleChannels.pollFirst();
+
+            if (idleChannel == null) {
+
+                // The channel has been taken by a blocking borrower in between.
+                this.waiters.addFirst(waiter);
+                return;
+            }
+
+            channel = idleChannel.channel;
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        if (!waiter.trySuccess(channel)) {
+            release(channel);
+        }
+    }
+
+    /**
+     * Reserves a pool slot for the first waiter if the pool is not full. The lock must be held by the caller.
+     *
+     * @return the waiter for which a slot has been reserved or <code>null</code>
+     */
+    private Promise<Channel> reserveSlotForWaiter() {
+
+        if (this.closed || this.waiters.isEmpty() || this.size >= this.configuration.getMaxPoolSize()) {
+            return null;
+        }
+
+        this.size++;
+        return this.waiters.pollFirst();
+    }
+
+    /**
+     * Fails the specified waiter if it has not been served before the borrow timeout.
+     *
+     * @param waiter the waiter
+     */
+    private void scheduleBorrowTimeout(final Promise<Channel> waiter) {
+
+        this.bootstrap.group().schedule(new Runnable() {
+
+            @Override
+            public void run() {
+
+                ConnectionPool.this.lock.lock();
+
+                try {
+
+                    ConnectionPool.this.waiters.remove(waiter);
+
+                } finally {
+
+                    ConnectionPool.this.lock.unlock();
+                }
+
+                waiter.tryFailure(new ConnectionFailureException("No connection became available within "
+                        + ConnectionPool.this.configuration.getBorrowTimeoutInSeconds() + " seconds."));
+            }
+
+        }, this.configuration.getBorrowTimeoutInSeconds(), TimeUnit.SECONDS);
+    }
+
+    /**
+     * Opens asynchronously the channels needed to reach the minimum pool size.
+     */
+    private void ensureMinPoolSize() {
+
+        int missing;
+
+        this.lock.lock();
+
+        try {
+
+            if (this.closed) {
+                return;
+            }
+
+            missing = this.configuration.getMinPoolSize() - this.size;
+            this.size += Math.max(0, missing);
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        for (int i = 0; i < missing; i++) {
+
+            this.bootstrap.connect(this.configuration.getHostAddress()).addListener(new ChannelFutureListener() {
+
+                @Override
+                public void operationComplete(ChannelFuture future) {
+
+                    if (!future.isSuccess()) {
+                        freeSlot();
+                        return;
+                    }
+
+                    ConnectionPool.this.channels.add(future.channel());
+                    addIdleChannel(future.channel());
+                }
+            });
+        }
+    }
+
+    /**
+     * Adds the specified newly opened channel to the idle channels.
+     *
+     * @param channel the new channel
+     */
+    private void addIdleChannel(Channel channel) {
+
+        this.lock.lock();
+
+        try {
+
+            if (this.closed) {
+
+                discard(channel);
+
+            } else {
+
+                this.idleChannels.addLast(new IdleChannel(channel, System.nanoTime()));
+            }
+
+            this.available.signal();
+
+        } finally {
+
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Closes the channels that have been idle for longer than the maximum idle time while keeping
+     * the minimum number of channels open.
+     */
+    private void evictIdleChannels() {
+
+        long maxIdleTimeInNanos = TimeUnit.SECONDS.toNanos(this.configuration.getMaxIdleTimeInSeconds());
+        long now = System.nanoTime();
+
+        this.lock.lock();
+
+        try {
+
+            while (this.size > this.configuration.getMinPoolSize()) {
+
+                IdleChannel oldest = this.idleChannels.peekLast();
+
+                if (oldest == null || (isValid(oldest.channel) && now - oldest.idleSince < maxIdleTimeInNanos)) {
+                    break;
+                }
+
+                this.idleChannels.pollLast();
+                discard(oldest.channel);
+            }
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        ensureMinPoolSize();
+    }
+
+    /**
+     * Closes the specified channel and frees its slot. The lock must be held by the caller.
+     *
+     * @param channel the channel to discard
+     */
+    private void discard(Channel channel) {
+
+        this.size--;
+        channel.close();
+    }
+
+    /**
+     * Frees a slot reserved for a channel that could not be opened.
+     */
+    private void freeSlot() {
+
+        Promise<Channel> waiter;
+
+        this.lock.lock();
+
+        try {
+
+            this.size--;
+            this.available.signal();
+            waiter = reserveSlotForWaiter();
+
+        } finally {
+
+            this.lock.unlock();
+        }
+
+        if (waiter != null) {
+            connectAsync(waiter);
+        }
+    }
+
+    /**
+     * Checks that the pool has not been closed.
+     */
+    private void checkNotClosed() {
+
+        if (this.closed) {
+            throw new ConnectionFailureException("The connection pool has been closed.");
+        }
+    }
+
+    /**
+     * Checks if the calling thread is one of the event loop threads of the pool channels.
+     *
+     * @return <code>true</code> if the calling thread is an event loop thread, <code>false</code> otherwise.
+     */
+    private boolean inEventLoop() {
+
+        for (EventExecutor executor : this.bootstrap.group()) {
+
+            if (executor.inEventLoop()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Validates the specified channel. A channel can only be used if it is still open and if its handler has
+     * no request in flight and no unconsumed message.
+     *
+     * @param channel the channel to validate
+     * @return <code>true</code> if the channel can be used, <code>false</code> otherwise.
+     */
+    private static boolean isValid(Channel channel) {
+
+        return channel.isActive() && isIdle(channel);
+    }
+
+    /**
+     * Checks that the specified channel has no request in flight and no unconsumed message, so that it 
+     * can be handed to another user.
+     *
+     * @param channel the channel to check
+     * @return <code>true</code> if the channel is idle, <code>false</code> otherwise.
+     */
+    private static boolean isIdle(Channel channel) {
+
+        ClientHandler handler = channel.pipeline().get(ClientHandler.class);
+        return handler == null || handler.isIdle();
+    }
+
+    /**
+     * A channel waiting in the pool.
+     */
+    private static final class IdleChannel {
+
+        /**
+         * The idle channel.
+         */
+        private final Channel channel;
+
+        /**
+         * The time in nanoseconds at which the channel became idle.
+         */
+        private final long idleSince;
+
+        public IdleChannel(Channel channel, long idleSince) {
+            this.channel = channel;
+            this.idleSince = idleSince;
+        }
+    }
+}
@@ -18,12 +18,46 @@ import io.horizondb.model.protocol.Msg;
 import io.horizondb.model.protocol.Msgs;
 import io.horizondb.model.schema.RecordSetDefinition;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * @author Benjamin
  *
  */
 public class DataChunkResponseConverter implements ResponseConverter {
 
+    /**
+     * The executor running the prefetching tasks, or <code>null</code> if the prefetching is disabled.
+     */
+    private final ExecutorService prefetchExecutor;
+
+    /**
+     * The maximum number of chunks decoded ahead of the consumer.
+     */
+    private final int prefetchDepth;
+
+    /**
+     * Creates a new <code>DataChunkResponseConverter</code> without prefetching.
+     */
+    public DataChunkResponseConverter() {
+        this(null, 0);
+    }
+
+    /**
+     * Creates a new <code>DataChunkResponseConverter</code> decoding the data chunks ahead of the 
+     * consumer.
+     * 
+     * @param prefetchExecutor the executor running the prefetching tasks, or <code>null</code> if the 
+     * prefetching is disabled
+     * @param prefetchDepth the maximum number of chunks decoded ahead of the consumer
+     */
+    public DataChunkResponseConverter(ExecutorService prefetchExecutor, int prefetchDepth) {
+
+        this.prefetchExecutor = prefetchExecutor;
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -33,6 +67,20 @@ public class DataChunkResponseConverter implements ResponseConverter {
         DataHeaderPayload header = Msgs.getPayload(response);
         RecordSetDefinition definition = header.getDefinition();
         
+        if (this.prefetchExecutor != null) {
+
+            try {
+
+                return new DefaultRecordSet(definition, new PrefetchingRecordIterator(definition,
+                                                                                      channel,
+                                                                                      this.prefetchExecutor,
+                                                                                      this.prefetchDepth));
+            } catch (RejectedExecutionException e) {
+
+                // All the prefetching threads are busy, the records are decoded by the consumer thread.
+            }
+        }
+
         return new DefaultRecordSet(definition, new StreamedRecordIterator(definition, channel));
     }
 
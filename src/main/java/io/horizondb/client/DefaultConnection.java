@@ -15,6 +15,7 @@
  */
 package io.horizondb.client;
 
+import io.horizondb.model.core.Record;
 import io.horizondb.model.protocol.HqlQueryPayload;
 import io.horizondb.model.protocol.Msg;
 import io.horizondb.model.protocol.Msgs;
@@ -22,10 +23,27 @@ import io.horizondb.model.protocol.OpCode;
 import io.horizondb.model.protocol.SetDatabasePayload;
 import io.horizondb.model.schema.DatabaseDefinition;
 import io.netty.channel.Channel;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
+
+import static org.apache.commons.lang.Validate.isTrue;
 
 /**
+ * Default <code>Connection</code> implementation. 
+ * <p>
+ * A <code>DefaultConnection</code> can be used concurrently by several threads: each query uses its own
+ * <code>MsgChannel</code> and the requests in flight are multiplexed over the same socket.
+ * </p>
+ * 
  * @author Benjamin
  *
  */
@@ -37,9 +55,14 @@ class DefaultConnection implements Connection {
 	 private final ClientConfiguration configuration;
 	 
 	 /**
-	  * The channel.
+	  * The underlying pooled channel.
+	  */
+	 private final Channel channel;
+	 
+	 /**
+	  * The timer used to fail the asynchronous requests that time out.
 	  */
-	 private final MsgChannel channel;
+	 private final Timer timer;
 	 
 	 /**
 	  * The response converter.
@@ -49,17 +72,34 @@ class DefaultConnection implements Connection {
 	 /**
 	  * The database definition.
 	  */
-	 private DatabaseDefinition databaseDefinition;
+	 private volatile DatabaseDefinition databaseDefinition;
+	 
+	 /**
+	  * The pool to which the channel must be returned.
+	  */
+	 private final ConnectionPool pool;
+	 
+	 /**
+	  * <code>true</code> if the connection has been closed.
+	  */
+	 private volatile boolean closed;
 	 
 	/**
-	 * @param channel 
-	 * 
+	 * @param channel the pooled channel
+	 * @param timer the timer used to fail the asynchronous requests that time out
+	 * @param pool the pool to which the channel must be returned on close
 	 */
-	public DefaultConnection(ClientConfiguration configuration, Channel channel, ResponseConverter converter) {
+	public DefaultConnection(ClientConfiguration configuration, 
+	                         Channel channel, 
+	                         Timer timer,
+	                         ResponseConverter converter, 
+	                         ConnectionPool pool) {
 		
 		this.configuration = configuration;
-		this.channel = new DefaultMsgChannel(channel, configuration.getQueryTimeoutInSeconds());
+		this.channel = channel;
+		this.timer = timer;
 		this.converter = converter;
+		this.pool = pool;
 	}
 	
     /**
@@ -81,34 +121,293 @@ class DefaultConnection implements Connection {
     @Override
     public RecordSet execute(String query) {
 
+        return execute(query, this.configuration.getQueryTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecordSet execute(String query, long timeout, TimeUnit unit) {
+
+        checkNotClosed();
+        checkTimeout(timeout, unit);
+        
+        MsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, unit.toMillis(timeout));
         
         try {
             Msg<HqlQueryPayload> request = Msgs.newHqlQueryMsg(getDatabase(), query);
                 
-            this.channel.sendRequest(request);
+            msgChannel.sendRequest(request);
             
-            Msg<?> response = this.channel.awaitResponse(this.configuration.getQueryTimeoutInSeconds());
+            Msg<?> response = msgChannel.awaitResponse();
             
-            if (response.getOpCode() == OpCode.SET_DATABASE) {
-                
-                SetDatabasePayload payload = Msgs.getPayload(response);
-                this.databaseDefinition = payload.getDefinition();
-            }
+            return toRecordSet(response, msgChannel);
             
-            return this.converter.convert(response, this.channel);
+        } catch (RuntimeException e) {
+            
+            msgChannel.close();
+            throw e;
             
         } catch (IOException e) {
+            
+            msgChannel.close();
             throw new HorizonDBException("Could not send the query: '" +  query + "' due to the following exception", 
                                          e);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<RecordSet> executeAsync(String query) {
+
+        return executeAsync(query, this.configuration.getQueryTimeoutInMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<RecordSet> executeAsync(final String query, long timeout, TimeUnit unit) {
+
+        checkNotClosed();
+        checkTimeout(timeout, unit);
+
+        final Promise<RecordSet> promise = this.channel.eventLoop().newPromise();
+        final MsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, unit.toMillis(timeout));
+
+        try {
+
+            Msg<HqlQueryPayload> request = Msgs.newHqlQueryMsg(getDatabase(), query);
+
+            msgChannel.sendRequestAsync(request).addListener(new FutureListener<Msg<?>>() {
+
+                @Override
+                public void operationComplete(Future<Msg<?>> future) {
+
+                    if (!future.isSuccess()) {
+
+                        msgChannel.close();
+                        promise.setFailure(future.cause());
+                        return;
+                    }
+
+                    try {
+
+                        promise.setSuccess(toRecordSet(future.getNow(), msgChannel));
+
+                    } catch (RuntimeException e) {
+
+                        msgChannel.close();
+                        promise.setFailure(e);
+                    }
+                }
+            });
+
+        } catch (IOException e) {
+
+            msgChannel.close();
+            promise.setFailure(new HorizonDBException("Could not send the query: '" + query
+                    + "' due to the following exception", e));
+        }
+
+        return promise;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<RecordSet> executePipelined(List<String> queries) {
+
+        checkNotClosed();
+
+        List<DefaultMsgChannel> msgChannels = new ArrayList<>(queries.size());
+
+        try {
+
+            for (String query : queries) {
+
+                DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, 
+                                                                     this.timer,
+                                                                     this.configuration.getQueryTimeoutInMillis());
+                
+                // The results received before the header of the last query must be buffered whatever their
+                // size, as the reading of the socket cannot be suspended until all the headers are received.
+                msgChannel.setFlowControlled(false);
+                msgChannels.add(msgChannel);
+                msgChannel.sendRequest(newQueryMsg(query), false);
+            }
+
+        } catch (RuntimeException e) {
+
+            for (DefaultMsgChannel msgChannel : msgChannels) {
+                msgChannel.close();
+            }
+            throw e;
+
+        } finally {
+
+            this.channel.flush();
+        }
+
+        List<RecordSet> recordSets = new ArrayList<>(msgChannels.size());
+        RuntimeException failure = null;
+
+        try {
+
+            for (DefaultMsgChannel msgChannel : msgChannels) {
+
+                if (failure != null) {
+
+                    msgChannel.close();
+                    continue;
+                }
+
+                try {
+
+                    Msg<?> response = msgChannel.awaitResponse();
+                    recordSets.add(toRecordSet(response, msgChannel));
+
+                } catch (RuntimeException e) {
+
+                    msgChannel.close();
+                    failure = e;
+                }
+            }
+
+        } finally {
+
+            for (DefaultMsgChannel msgChannel : msgChannels) {
+                msgChannel.setFlowControlled(true);
+            }
+        }
+
+        if (failure != null) {
+
+            for (RecordSet recordSet : recordSets) {
+
+                try {
+
+                    recordSet.close();
+
+                } catch (RuntimeException e) {
+
+                    failure.addSuppressed(e);
+                }
+            }
+            throw failure;
+        }
+
+        return recordSets;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery prepare(String query) {
+
+        checkNotClosed();
+
+        return new DefaultPreparedQuery(this, query);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Publisher<Record> publish(String query) {
+
+        checkNotClosed();
+
+        return new RecordPublisher(this.channel, 
+                                   this.timer, 
+                                   this.configuration.getQueryTimeoutInMillis(), 
+                                   newQueryMsg(query));
+    }
+
     /**
 	 * {@inheritDoc}
 	 */
     @Override
     public void close() throws IOException {
     	
-    	this.channel.close();
+        if (this.closed) {
+            return;
+        }
+        
+        this.closed = true;
+        
+        // The record sets that have not been fully read still have listeners registered on the channel. They
+        // must be closed before the channel is handed over to another connection.
+        ClientHandler handler = this.channel.pipeline().get(ClientHandler.class);
+        
+        if (handler != null) {
+            handler.closeListeners();
+        }
+        
+    	this.pool.release(this.channel);
+    }
+
+    
+    /**
+     * Converts the specified response into a <code>RecordSet</code>.
+     * 
+     * @param response the first response received for the query
+     * @param msgChannel the channel used to receive the following responses
+     * @return the <code>RecordSet</code> corresponding to the response
+     */
+    private RecordSet toRecordSet(Msg<?> response, MsgChannel msgChannel) {
+        
+        if (response.getOpCode() == OpCode.SET_DATABASE) {
+            
+            SetDatabasePayload payload = Msgs.getPayload(response);
+            this.databaseDefinition = payload.getDefinition();
+        }
+        
+        return this.converter.convert(response, msgChannel);
+    }
+    
+    /**
+     * Creates the request message for the specified query.
+     * 
+     * @param query the HQL query
+     * @return the request message
+     */
+    private Msg<HqlQueryPayload> newQueryMsg(String query) {
+        
+        try {
+            
+            return Msgs.newHqlQueryMsg(getDatabase(), query);
+            
+        } catch (IOException e) {
+            
+            throw new HorizonDBException("Could not send the query: '" +  query 
+                                         + "' due to the following exception", e);
+        }
+    }
+    
+    /**
+     * Checks that this connection has not been closed.
+     */
+    private void checkNotClosed() {
+        
+        if (this.closed) {
+            throw new HorizonDBException("The connection has been closed.");
+        }
+    }
+    
+    /**
+     * Checks that the specified query timeout is at least one millisecond.
+     * 
+     * @param timeout the query timeout
+     * @param unit the unit of the timeout
+     */
+    private static void checkTimeout(long timeout, TimeUnit unit) {
+        
+        isTrue(unit.toMillis(timeout) > 0, "The query timeout must be at least one millisecond.");
     }
 }
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.model.schema.RecordSetDefinition;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang.Validate.isTrue;
+
+/**
+ * Default <code>MaterializedResult</code> implementation reading its records from a 
+ * <code>RecordStore</code>.
+ * 
+ * @author Benjamin
+ *
+ */
+final class DefaultMaterializedResult extends DefaultRecordSet implements MaterializedResult {
+
+    /**
+     * The cursor over the stored records.
+     */
+    private final RecordStore.Cursor cursor;
+
+    /**
+     * Creates a new <code>DefaultMaterializedResult</code> over the records of the specified store.
+     * 
+     * @param definition the records definition
+     * @param cursor the cursor over the stored records
+     */
+    DefaultMaterializedResult(RecordSetDefinition definition, RecordStore.Cursor cursor) {
+
+        super(definition, cursor);
+        this.cursor = cursor;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int size() {
+        return this.cursor.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeFirst() {
+
+        isTrue(!this.closed, "The RecordSet has been closed.");
+
+        this.cursor.setPosition(0);
+        reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean absolute(int row) {
+
+        isTrue(!this.closed, "The RecordSet has been closed.");
+        isTrue(row >= 0, "The row index must be positive.");
+
+        this.cursor.setPosition(Math.min(row, size()));
+        reset();
+
+        return next();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean seek(long timestamp, TimeUnit unit) {
+
+        isTrue(!this.closed, "The RecordSet has been closed.");
+
+        try {
+
+            this.cursor.seek(unit.toNanos(timestamp));
+            reset();
+
+            return next();
+
+        } catch (IOException e) {
+
+            throw new HorizonDBException("", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getRow() {
+
+        if (this.endOfRecordSet) {
+            return size();
+        }
+
+        return this.cursor.getPosition() - 1;
+    }
+}
@@ -15,44 +15,114 @@ package io.horizondb.client;
 
 import io.horizondb.model.protocol.ErrorPayload;
 import io.horizondb.model.protocol.Msg;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.Promise;
 
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Handle the sending and retrieval of messages.
+ * Handle the sending of a request and the retrieval of its responses.
+ * <p>
+ * Several <code>DefaultMsgChannel</code> can share the same Netty channel. The responses are routed to
+ * the right <code>DefaultMsgChannel</code> by the <code>ClientHandler</code> using the request ID of
+ * the message header.
+ * </p>
  * 
  * @author Benjamin
  *
  */
- class DefaultMsgChannel implements MsgChannel {
+ class DefaultMsgChannel implements MsgChannel, MsgListener {
+	 
+	 /**
+	  * The marker queued when the channel is closed to wake up the thread awaiting a response.
+	  */
+	 private static final Response CLOSED = new Response(null);
 	 
 	 /**
 	  * The channel.
 	  */
 	 private final Channel channel;
 	 
+	 /**
+	  * The handler routing the responses.
+	  */
+	 private final ClientHandler handler;
+	 
 	 /**
 	  * The queue used to store the response messages.
 	  */
-	 private final BlockingQueue<Msg<?>> queue;
+	 private final BlockingQueue<Response> queue = new LinkedBlockingQueue<>();
+	 
+	 /**
+	  * The timer used to fail the asynchronous requests that time out.
+	  */
+	 private final Timer timer;
+	 
+	 /**
+	  * The query timeout in milliseconds.
+	  */
+	 private final long queryTimeoutInMillis;
+	 
+	 /**
+	  * The ID of the request in flight.
+	  */
+	 private long requestId;
+	 
+	 /**
+	  * <code>true</code> if this channel is registered for the responses of a request.
+	  */
+	 private volatile boolean registered;
+	 
+	 /**
+	  * The promise completed by the first response when the request has been sent asynchronously.
+	  */
+	 private volatile Promise<Msg<?>> responsePromise;
+	 
+	 /**
+	  * The frame of the last response returned by <code>awaitResponse</code>, or <code>null</code>.
+	  */
+	 private ByteBuf currentFrame;
 	 
 	 /**
-	  * The query timeout in second.
+	  * <code>true</code> if the buffered responses count against the water marks of the connection.
 	  */
-	 private final int queryTimeoutInSecond;
+	 private volatile boolean flowControlled = true;
+	 
+	 /**
+	  * The listener reporting the write failures to the thread awaiting the response.
+	  */
+	 private final ChannelFutureListener writeListener = new ChannelFutureListener() {
+
+	     @Override
+	     public void operationComplete(ChannelFuture future) {
+
+	         if (!future.isSuccess()) {
+	             onFailure(new ConnectionFailureException("The request could not be sent.", future.cause()));
+	         }
+	     }
+	 };
 	 
 	/**
-	 * @param channel 
-	 * 
+	 * @param channel the channel
+	 * @param timer the timer used to fail the asynchronous requests that time out
+	 * @param queryTimeoutInMillis the query timeout in milliseconds
 	 */
-	public DefaultMsgChannel(Channel channel, int queryTimeoutInSecond) {
+	public DefaultMsgChannel(Channel channel, Timer timer, long queryTimeoutInMillis) {
 		
 		this.channel = channel;
-		this.queryTimeoutInSecond = queryTimeoutInSecond;
-		this.queue = ((ClientHandler) this.channel.pipeline().last()).getQueue();
+		this.timer = timer;
+		this.queryTimeoutInMillis = queryTimeoutInMillis;
+		this.handler = this.channel.pipeline().get(ClientHandler.class);
 	}
 
 	/**
@@ -61,15 +131,74 @@ import java.util.concurrent.TimeUnit;
     @Override
     public void sendRequest(Msg<?> request) {
 	    
-    	this.queue.clear();
-		
-		ChannelFuture future = this.channel.writeAndFlush(request);
-		future.awaitUninterruptibly();
-		
-		if (!future.isSuccess()) {
-			
-			throw new HorizonDBException("",  future.cause());
-		}
+        sendRequest(request, true);
+    }
+
+    /**
+     * Send the specified request to the server. If <code>flush</code> is <code>false</code> the request
+     * is only written to the channel outbound buffer and will be sent by the next flush of the channel.
+     *
+     * @param request the request sent to the server.
+     * @param flush <code>true</code> if the channel must be flushed, <code>false</code> otherwise.
+     */
+    public void sendRequest(Msg<?> request, boolean flush) {
+
+        this.responsePromise = null;
+        register(request);
+
+        if (flush) {
+            this.channel.writeAndFlush(request).addListener(this.writeListener);
+        } else {
+            this.channel.write(request).addListener(this.writeListener);
+        }
+    }
+
+    /**
+     * Specifies if the responses buffered by this channel count against the water marks of the connection.
+     * The responses of a pipelined query must not be flow controlled while the headers of the following 
+     * queries are awaited, otherwise the reading of the socket could be suspended before these headers are
+     * received.
+     *
+     * @param flowControlled <code>true</code> if the responses received from now on count against the 
+     * water marks, <code>false</code> otherwise.
+     */
+    void setFlowControlled(boolean flowControlled) {
+
+        this.flowControlled = flowControlled;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<Msg<?>> sendRequestAsync(Msg<?> request) {
+
+        final Promise<Msg<?>> promise = this.channel.eventLoop().newPromise();
+
+        this.responsePromise = promise;
+        register(request);
+
+        final Timeout timeout = this.timer.newTimeout(new TimerTask() {
+
+            @Override
+            public void run(Timeout timeout) {
+                promise.tryFailure(new QueryTimeoutException("No response has been received for more than "
+                        + DefaultMsgChannel.this.queryTimeoutInMillis + " milliseconds."));
+            }
+
+        }, this.queryTimeoutInMillis, TimeUnit.MILLISECONDS);
+
+        promise.addListener(new FutureListener<Msg<?>>() {
+
+            @Override
+            public void operationComplete(Future<Msg<?>> future) {
+                timeout.cancel();
+            }
+        });
+
+        this.channel.writeAndFlush(request).addListener(this.writeListener);
+
+        return promise;
     }
 
     /**
@@ -78,27 +207,59 @@ import java.util.concurrent.TimeUnit;
     @Override
     public Msg<?> awaitResponse() {
         
-        return awaitResponse(this.queryTimeoutInSecond);
+        return awaitResponse(this.queryTimeoutInMillis, TimeUnit.MILLISECONDS);
     }
     
     /**
      * {@inheritDoc}
      */
     @Override
-    public Msg<?> awaitResponse(int timeoutInSeconds) {
+    public Msg<?> awaitResponse(long timeout, TimeUnit unit) {
 	    try {
 	        
-			Msg<?> response = this.queue.poll(timeoutInSeconds, TimeUnit.SECONDS);
+	        releaseCurrentFrame();
+	        
+			Response entry = this.queue.poll(timeout, unit);
 			
-			if (response == null) {
+			if (entry == null) {
 				
 				throw new QueryTimeoutException("No response has been received for more than " 
-						+ timeoutInSeconds + " seconds.");
+						+ unit.toMillis(timeout) + " milliseconds.");
 			}
 			
-			if (!response.getHeader().isSuccess()) {
-				
-				throw new HorizonDBException((ErrorPayload) response.getPayload());
+			if (entry == CLOSED) {
+			    
+			    throw new HorizonDBException("The channel has been closed.");
+			}
+			
+			if (entry.cause != null) {
+			    
+			    throw toException(entry.cause);
+			}
+			
+			Msg<?> response = entry.message;
+			
+			// The entry must be consumed under the lock so that a concurrent close cannot miss its frame.
+			synchronized (this) {
+			    
+			    if (entry.flowControlled) {
+			        this.handler.onConsumed(entry.size);
+			    }
+			    
+			    if (!this.registered) {
+			        
+			        entry.frame.release();
+			        throw new HorizonDBException("The channel has been closed.");
+			    }
+			    
+			    if (!response.getHeader().isSuccess()) {
+			        
+			        ErrorPayload payload = (ErrorPayload) response.getPayload();
+			        entry.frame.release();
+			        throw new HorizonDBException(payload);
+			    }
+			    
+			    setCurrentFrame(entry.frame);
 			}
 			
 			return response;
@@ -110,12 +271,216 @@ import java.util.concurrent.TimeUnit;
         }
     }
 	
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMessage(Msg<?> message, ByteBuf frame, int size) {
+        
+        Promise<Msg<?>> promise = this.responsePromise;
+
+        if (promise != null && !promise.isDone()) {
+
+            // The first response is a header or an error whose payload has been fully decoded, so its 
+            // frame can be released straight away.
+            try {
+
+                if (message.getHeader().isSuccess()) {
+
+                    promise.trySuccess(message);
+
+                } else {
+
+                    promise.tryFailure(new HorizonDBException((ErrorPayload) message.getPayload()));
+                }
+
+            } finally {
+
+                frame.release();
+            }
+
+            return;
+        }
+
+        synchronized (this) {
+
+            if (this.registered) {
+
+                boolean counted = this.flowControlled;
+                
+                this.queue.add(new Response(message, frame, size, counted));
+                
+                if (counted) {
+                    this.handler.onBuffered(size);
+                }
+                return;
+            }
+        }
+
+        frame.release();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>The failure is reported to the thread awaiting the response.</p>
+     */
+    @Override
+    public void onFailure(Throwable cause) {
+
+        Promise<Msg<?>> promise = this.responsePromise;
+
+        if (promise != null && promise.tryFailure(toException(cause))) {
+            return;
+        }
+
+        synchronized (this) {
+
+            if (this.registered) {
+                this.queue.add(new Response(cause));
+            }
+        }
+    }
+    
 	/**
      * {@inheritDoc}
      */
     @Override
-    public void close() {
+    public synchronized void close() {
     	
-    	this.channel.disconnect();
+        Response entry;
+        
+        while ((entry = this.queue.poll()) != null) {
+            
+            if (entry.frame != null) {
+                
+                if (entry.flowControlled) {
+                    this.handler.onConsumed(entry.size);
+                }
+                entry.frame.release();
+            }
+        }
+        
+        releaseCurrentFrame();
+        
+        if (this.registered) {
+            
+            this.handler.unregister(this.requestId, this);
+            this.registered = false;
+            
+            // Wakes up the thread that might still be awaiting a response.
+            this.queue.add(CLOSED);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized ByteBuf getCurrentFrame() {
+
+        return this.currentFrame;
+    }
+
+    /**
+     * Replaces the frame of the last response returned by <code>awaitResponse</code>.
+     *
+     * @param frame the frame of the response returned
+     */
+    private synchronized void setCurrentFrame(ByteBuf frame) {
+
+        releaseCurrentFrame();
+        this.currentFrame = frame;
+    }
+
+    /**
+     * Releases the frame of the last response returned by <code>awaitResponse</code>, if any.
+     */
+    private synchronized void releaseCurrentFrame() {
+
+        if (this.currentFrame != null) {
+
+            this.currentFrame.release();
+            this.currentFrame = null;
+        }
+    }
+
+    /**
+     * Converts the specified failure into the exception thrown to the caller. The connection failures keep
+     * their type so that the caller can distinguish them from the query errors.
+     *
+     * @param cause the cause of the failure
+     * @return the exception to throw
+     */
+    private static HorizonDBException toException(Throwable cause) {
+
+        if (cause instanceof ConnectionFailureException) {
+            return new ConnectionFailureException(cause.getMessage(), cause);
+        }
+
+        return new HorizonDBException("", cause);
+    }
+
+    /**
+     * Registers this channel for the responses of the specified request.
+     *
+     * @param request the request that will be sent
+     */
+    private void register(Msg<?> request) {
+
+        close();
+        
+        // Drops the closing marker of the previous request.
+        this.queue.clear();
+
+        this.requestId = request.getHeader().getRequestId();
+        this.handler.register(this.requestId, this);
+        this.registered = true;
+    }
+
+    /**
+     * A response, or a failure, waiting to be consumed.
+     */
+    private static final class Response {
+
+        /**
+         * The response message.
+         */
+        private final Msg<?> message;
+
+        /**
+         * The frame from which the message has been decoded.
+         */
+        private final ByteBuf frame;
+
+        /**
+         * The size of the message in bytes.
+         */
+        private final int size;
+
+        /**
+         * <code>true</code> if the message has been counted against the water marks.
+         */
+        private final boolean flowControlled;
+
+        /**
+         * The cause of the failure or <code>null</code> for a message.
+         */
+        private final Throwable cause;
+
+        public Response(Msg<?> message, ByteBuf frame, int size, boolean flowControlled) {
+            this.message = message;
+            this.frame = frame;
+            this.size = size;
+            this.flowControlled = flowControlled;
+            this.cause = null;
+        }
+
+        public Response(Throwable cause) {
+            this.message = null;
+            this.frame = null;
+            this.size = 0;
+            this.flowControlled = false;
+            this.cause = cause;
+        }
     }
 }
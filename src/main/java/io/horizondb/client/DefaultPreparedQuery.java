@@ -0,0 +1,396 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.util.concurrent.Future;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.apache.commons.lang.Validate.isTrue;
+
+/**
+ * Default <code>PreparedQuery</code> implementation.
+ * <p>
+ * The query is split once around its parameters, so each execution only has to concatenate the fragments 
+ * and the bound values.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+final class DefaultPreparedQuery implements PreparedQuery {
+
+    /**
+     * The format used for the timestamps.
+     */
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss.SSS";
+
+    /**
+     * The connection used to execute the query.
+     */
+    private final Connection connection;
+
+    /**
+     * The query fragments surrounding the parameters.
+     */
+    private final String[] fragments;
+
+    /**
+     * The parameter bound at each parameter position of the query.
+     */
+    private final int[] parameters;
+
+    /**
+     * The parameters corresponding to the positional markers.
+     */
+    private final int[] positionalParameters;
+
+    /**
+     * The parameters corresponding to the names.
+     */
+    private final Map<String, Integer> namedParameters;
+
+    /**
+     * The values bound to the parameters.
+     */
+    private final String[] values;
+
+    /**
+     * The number of characters of the fragments.
+     */
+    private final int fragmentsLength;
+
+    /**
+     * The format used for the timestamps.
+     */
+    private DateFormat timestampFormat;
+
+    /**
+     * Creates a new <code>DefaultPreparedQuery</code> for the specified query.
+     * 
+     * @param connection the connection used to execute the query
+     * @param query the HQL query
+     */
+    public DefaultPreparedQuery(Connection connection, String query) {
+
+        this.connection = connection;
+
+        List<String> fragmentList = new ArrayList<>();
+        List<Integer> parameterList = new ArrayList<>();
+        List<Integer> positionalList = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+
+        StringBuilder fragment = new StringBuilder();
+        boolean quoted = false;
+        int numberOfParameters = 0;
+        int length = 0;
+
+        for (int i = 0, m = query.length(); i < m; i++) {
+
+            char c = query.charAt(i);
+
+            if (c == '\'') {
+
+                quoted = !quoted;
+                fragment.append(c);
+
+            } else if (!quoted && c == '?') {
+
+                positionalList.add(Integer.valueOf(numberOfParameters));
+                parameterList.add(Integer.valueOf(numberOfParameters++));
+
+                length += fragment.length();
+                fragmentList.add(fragment.toString());
+                fragment.setLength(0);
+
+            } else if (!quoted && c == ':' && i + 1 < m && Character.isJavaIdentifierStart(query.charAt(i + 1))) {
+
+                int end = i + 2;
+
+                while (end < m && Character.isJavaIdentifierPart(query.charAt(end))) {
+                    end++;
+                }
+
+                String name = query.substring(i + 1, end);
+                Integer parameter = names.get(name);
+
+                if (parameter == null) {
+
+                    parameter = Integer.valueOf(numberOfParameters++);
+                    names.put(name, parameter);
+                }
+
+                parameterList.add(parameter);
+
+                length += fragment.length();
+                fragmentList.add(fragment.toString());
+                fragment.setLength(0);
+
+                i = end - 1;
+
+            } else {
+
+                fragment.append(c);
+            }
+        }
+
+        length += fragment.length();
+        fragmentList.add(fragment.toString());
+
+        this.fragments = fragmentList.toArray(new String[fragmentList.size()]);
+        this.parameters = toArray(parameterList);
+        this.positionalParameters = toArray(positionalList);
+        this.namedParameters = names;
+        this.values = new String[numberOfParameters];
+        this.fragmentsLength = length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setLong(int index, long l) {
+
+        return bind(positionalParameter(index), Long.toString(l));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setLong(String name, long l) {
+
+        return bind(namedParameter(name), Long.toString(l));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setDecimal(int index, long mantissa, int exponent) {
+
+        return bind(positionalParameter(index), toDecimalLiteral(mantissa, exponent));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setDecimal(String name, long mantissa, int exponent) {
+
+        return bind(namedParameter(name), toDecimalLiteral(mantissa, exponent));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setTimestampInMillis(int index, long l) {
+
+        return bind(positionalParameter(index), toTimestampLiteral(l));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setTimestampInMillis(String name, long l) {
+
+        return bind(namedParameter(name), toTimestampLiteral(l));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setString(int index, String s) {
+
+        return bind(positionalParameter(index), toStringLiteral(s));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery setString(String name, String s) {
+
+        return bind(namedParameter(name), toStringLiteral(s));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery clearParameters() {
+
+        Arrays.fill(this.values, null);
+        return this;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public RecordSet execute() {
+
+        return this.connection.execute(toQuery());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Future<RecordSet> executeAsync() {
+
+        return this.connection.executeAsync(toQuery());
+    }
+
+    /**
+     * Returns the query with the parameters replaced by their values.
+     * 
+     * @return the query with the parameters replaced by their values.
+     */
+    String toQuery() {
+
+        int length = this.fragmentsLength;
+
+        for (int i = 0; i < this.values.length; i++) {
+
+            isTrue(this.values[i] != null, "All the parameters of the query must be set before executing it.");
+            length += this.values[i].length();
+        }
+
+        StringBuilder builder = new StringBuilder(length + 16).append(this.fragments[0]);
+
+        for (int i = 0; i < this.parameters.length; i++) {
+
+            builder.append(this.values[this.parameters[i]])
+                   .append(this.fragments[i + 1]);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Binds the specified value to the specified parameter.
+     * 
+     * @param parameter the parameter
+     * @param value the value literal
+     * @return this <code>PreparedQuery</code>
+     */
+    private PreparedQuery bind(int parameter, String value) {
+
+        this.values[parameter] = value;
+        return this;
+    }
+
+    /**
+     * Returns the parameter corresponding to the specified positional marker.
+     * 
+     * @param index the positional marker index
+     * @return the parameter corresponding to the specified positional marker
+     */
+    private int positionalParameter(int index) {
+
+        isTrue(index >= 0 && index < this.positionalParameters.length, "The query has no parameter with the index: "
+                + index);
+
+        return this.positionalParameters[index];
+    }
+
+    /**
+     * Returns the parameter with the specified name.
+     * 
+     * @param name the parameter name
+     * @return the parameter with the specified name
+     */
+    private int namedParameter(String name) {
+
+        Integer parameter = this.namedParameters.get(name);
+
+        isTrue(parameter != null, "The query has no parameter with the name: " + name);
+
+        return parameter.intValue();
+    }
+
+    /**
+     * Returns the HQL literal of the specified timestamp.
+     * 
+     * @param l the timestamp in milliseconds since the epoch
+     * @return the HQL literal of the specified timestamp
+     */
+    private String toTimestampLiteral(long l) {
+
+        if (this.timestampFormat == null) {
+            this.timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT);
+            this.timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+
+        return '\'' + this.timestampFormat.format(new Date(l)) + '\'';
+    }
+
+    /**
+     * Returns the HQL literal of the specified decimal.
+     * 
+     * @param mantissa the decimal mantissa
+     * @param exponent the decimal exponent
+     * @return the HQL literal of the specified decimal
+     */
+    private static String toDecimalLiteral(long mantissa, int exponent) {
+
+        if (exponent == 0) {
+            return Long.toString(mantissa);
+        }
+
+        return mantissa + "E" + exponent;
+    }
+
+    /**
+     * Returns the HQL literal of the specified string.
+     * 
+     * @param s the string
+     * @return the HQL literal of the specified string
+     */
+    private static String toStringLiteral(String s) {
+
+        return '\'' + s.replace("'", "''") + '\'';
+    }
+
+    /**
+     * Converts the specified list into an array.
+     * 
+     * @param list the list to convert
+     * @return the array
+     */
+    private static int[] toArray(List<Integer> list) {
+
+        int[] array = new int[list.size()];
+
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i).intValue();
+        }
+
+        return array;
+    }
+}
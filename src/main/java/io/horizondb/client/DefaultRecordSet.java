@@ -20,6 +20,7 @@ import io.horizondb.model.schema.RecordSetDefinition;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.apache.commons.lang.Validate.isTrue;
@@ -50,6 +51,22 @@ class DefaultRecordSet implements RecordSet {
 	 */
 	private final ResourceIterator<? extends Record> iterator;
 	
+	/**
+	 * The accepted record types indexed by type or <code>null</code> if all the types are accepted.
+	 */
+	private boolean[] acceptedTypes;
+	
+	/**
+	 * The predicate that the records must satisfy or <code>null</code> if all the records are returned.
+	 */
+	private RecordPredicate predicate;
+	
+	/**
+	 * The batches into which the records of each type are decoded, or <code>null</code> if the records of 
+	 * the type are decoded into <code>records</code>. 
+	 */
+	private final ColumnBatch[] batches;
+	
 	/**
 	 * Creates a new <code>DefaultRecordSet</code> that will iterate over the specified 
 	 * records.
@@ -61,6 +78,7 @@ class DefaultRecordSet implements RecordSet {
 
 		this.definition = definition;
 		this.records = definition.newRecords();
+		this.batches = new ColumnBatch[this.records.length];
 		this.iterator = iterator;
 	}
 
@@ -253,6 +271,14 @@ class DefaultRecordSet implements RecordSet {
         return this.current.getDecimalExponent(index);
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final FieldAccessor getFieldAccessor(String name) {
+        return new RecordSetFieldAccessor(name);
+    }
+    
     /**
      * Checks that this record set is in a valid state for reading fields.
      */
@@ -300,24 +326,25 @@ class DefaultRecordSet implements RecordSet {
 	    
 		try {
 
-			this.endOfRecordSet = !this.iterator.hasNext();
+			do {
+
+			    Record next;
 
-			if (this.endOfRecordSet) {
-				return false;
-			}
+			    do {
 
-			Record next = this.iterator.next();
+			        this.endOfRecordSet = !this.iterator.hasNext();
 
-			this.current = this.records[next.getType()];
+			        if (this.endOfRecordSet) {
+			            return false;
+			        }
 
-			if (next.isDelta()) {
+			        next = this.iterator.next();
 
-				this.current.add(next);
+			    } while (this.acceptedTypes != null && !this.acceptedTypes[next.getType()]);
 
-			} else {
+			    this.current = decode(next);
 
-				next.copyTo(this.current);
-			}
+			} while (this.predicate != null && !this.predicate.test(this.current));
 
 	        onNext();
 			return true;
@@ -329,27 +356,250 @@ class DefaultRecordSet implements RecordSet {
 		}
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final RecordSet setPredicate(RecordPredicate predicate) {
+
+	    isTrue(!this.closed, "The RecordSet has been closed.");
+
+	    this.predicate = predicate;
+	    return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final RecordSet setRecordTypes(int... recordTypes) {
+
+	    isTrue(!this.closed, "The RecordSet has been closed.");
+	    isTrue(this.current == null && !this.endOfRecordSet,
+	           "The record types must be set before the first call to the next method.");
+
+	    boolean[] accepted = new boolean[this.records.length];
+
+	    for (int recordType : recordTypes) {
+	        accepted[recordType] = true;
+	    }
+
+	    this.acceptedTypes = accepted;
+
+	    if (this.iterator instanceof RecordTypeFilterable) {
+	        ((RecordTypeFilterable) this.iterator).setAcceptedTypes(accepted);
+	    }
+
+	    return this;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final RecordSet setRecordTypes(String... recordTypes) {
+
+	    int[] indices = new int[recordTypes.length];
+
+	    for (int i = 0; i < recordTypes.length; i++) {
+	        indices[i] = this.definition.getRecordTypeIndex(recordTypes[i]);
+	    }
+
+	    return setRecordTypes(indices);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final int nextBatch(ColumnBatch batch) {
+
+	    isTrue(!this.closed, "The RecordSet has been closed.");
+
+	    batch.clear();
+	    int type = batch.getRecordType();
+
+	    // The predicates are evaluated against the decoded records.
+	    if (this.predicate != null || !batch.isDirectlyDecodable()) {
+
+	        while (!batch.isFull() && next()) {
+
+	            if (this.current.getType() == type) {
+	                batch.add(this.current);
+	            }
+	        }
+
+	        return batch.size();
+	    }
+
+	    try {
+
+	        while (!batch.isFull()) {
+
+	            this.endOfRecordSet = !this.iterator.hasNext();
+
+	            if (this.endOfRecordSet) {
+	                break;
+	            }
+
+	            Record next = this.iterator.next();
+	            int nextType = next.getType();
+
+	            if (this.acceptedTypes != null && !this.acceptedTypes[nextType]) {
+	                continue;
+	            }
+
+	            if (nextType != type) {
+	                decode(next);
+	                continue;
+	            }
+
+	            if (this.batches[type] != batch) {
+
+	                isTrue(this.batches[type] == null, 
+	                       "The records of type " + type + " are already read through another batch.");
+
+	                batch.seed(this.records[type]);
+	                this.batches[type] = batch;
+	            }
+
+	            batch.decode(next);
+	        }
+
+	        // The current record is not up to date anymore.
+	        this.current = null;
+
+	        return batch.size();
+
+	    } catch (IOException e) {
+
+	        this.endOfRecordSet = true;
+	        throw new HorizonDBException("", e);
+	    }
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final MaterializedResult materialize() {
+	    return materialize(RecordStore.Storage.HEAP, RecordStore.DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final MaterializedResult materializeOffHeap() {
+	    return materialize(RecordStore.Storage.DIRECT, RecordStore.DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public final MaterializedResult materializeToFile() {
+	    return materialize(RecordStore.Storage.MAPPED_FILE, RecordStore.DEFAULT_MAPPED_SEGMENT_SIZE);
+	}
+
+	/**
+	 * Reads all the remaining records into a <code>MaterializedResult</code>.
+	 * 
+	 * @param storage where the records must be stored
+	 * @param segmentSize the size of the storage segments in bytes
+	 * @return a <code>MaterializedResult</code> containing the remaining records.
+	 */
+	private MaterializedResult materialize(RecordStore.Storage storage, int segmentSize) {
+
+	    isTrue(!this.closed, "The RecordSet has been closed.");
+
+	    RecordStore store = new RecordStore(this.definition, segmentSize, storage);
+
+	    try {
+
+	        while (next()) {
+	            store.add(this.current);
+	        }
+
+	        return new DefaultMaterializedResult(this.definition, store.newCursor());
+
+	    } catch (RuntimeException e) {
+
+	        store.release();
+	        throw e;
+
+	    } catch (IOException e) {
+
+	        store.release();
+	        throw new HorizonDBException("", e);
+	    }
+	}
+
 	/**
 	 * Returns a <code>List</code> containing all the remaining records of this <code>RecordSet</code>.
+	 * <p>
+	 * Each record is a separate object holding its full state. The records rejected by the predicate or 
+	 * whose type has not been accepted are skipped. For large results, <code>materialize</code> is much more
+	 * compact.
+	 * </p>
 	 * 
 	 * @return a <code>List</code> containing all the remaining records of this <code>RecordSet</code>.
 	 */
 	public List<Record> toList() {
 	    
-	    try {
-            
-	        List<Record> records = new ArrayList<>();
-            while (this.iterator.hasNext()) {
-                records.add(this.iterator.next().newInstance());
-            }
-            return records;
-            
-        } catch (IOException e) {
-            
-            throw new HorizonDBException("", e);
-        }
+	    List<Record> records = new ArrayList<>();
+	    
+	    while (next()) {
+	        records.add(this.current.newInstance());
+	    }
+	    
+	    return records;
 	}
 	
+    /**
+     * Moves the cursor before the next record returned by the iterator, after the iterator has been
+     * repositioned.
+     */
+    final void reset() {
+
+        this.current = null;
+        this.endOfRecordSet = false;
+        Arrays.fill(this.batches, null);
+    }
+
+    /**
+     * Decodes the specified record into the record of the same type.
+     * <p>
+     * Once the records of a type have been decoded straight into a batch, only the fields of the batch
+     * columns are up to date. The deltas of that type can therefore only be decoded by the batch, until a 
+     * full record is received.
+     * </p>
+     * 
+     * @param next the binary record
+     * @return the decoded record
+     * @throws IOException if a problem occurs while decoding the record
+     */
+    private TimeSeriesRecord decode(Record next) throws IOException {
+
+        int type = next.getType();
+        TimeSeriesRecord record = this.records[type];
+
+        if (next.isDelta()) {
+
+            isTrue(this.batches[type] == null, 
+                   "The records of type " + type + " can only be read through nextBatch.");
+
+            record.add(next);
+
+        } else {
+
+            next.copyTo(record);
+            this.batches[type] = null;
+        }
+
+        return record;
+    }
+
     /**
      * Notification that next has been called. 
      */
@@ -366,4 +616,149 @@ class DefaultRecordSet implements RecordSet {
     private int fieldIndex(String name) {
         return this.definition.getFieldIndex(this.current.getType(), name);
     }
+
+    /**
+     * <code>FieldAccessor</code> reading the fields of the current record of this <code>RecordSet</code>.
+     */
+    private final class RecordSetFieldAccessor implements FieldAccessor {
+
+        /**
+         * The marker used for the record types for which the field index has not been resolved yet.
+         */
+        private static final int UNRESOLVED = -1;
+
+        /**
+         * The field name.
+         */
+        private final String name;
+
+        /**
+         * The field index for each record type.
+         */
+        private final int[] indices;
+
+        public RecordSetFieldAccessor(String name) {
+
+            this.name = name;
+            this.indices = new int[DefaultRecordSet.this.records.length];
+            Arrays.fill(this.indices, UNRESOLVED);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public String getName() {
+            return this.name;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestampInSeconds() {
+            return current().getTimestampInSeconds(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestampInMillis() {
+            return current().getTimestampInMillis(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestampInMicros() {
+            return current().getTimestampInMicros(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getTimestampInNanos() {
+            return current().getTimestampInNanos(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getLong() {
+            return current().getLong(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getInt() {
+            return current().getInt(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int getByte() {
+            return current().getByte(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long getDecimalMantissa() {
+            return current().getDecimalMantissa(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public byte getDecimalExponent() {
+            return current().getDecimalExponent(index());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double getDouble() {
+            return current().getDouble(index());
+        }
+
+        /**
+         * Returns the current record after having checked that the record set is in a valid state.
+         * 
+         * @return the current record
+         */
+        private TimeSeriesRecord current() {
+            checkState();
+            return DefaultRecordSet.this.current;
+        }
+
+        /**
+         * Returns the index of the field within the current record.
+         * 
+         * @return the index of the field within the current record
+         */
+        private int index() {
+
+            int type = DefaultRecordSet.this.current.getType();
+            int index = this.indices[type];
+
+            if (index == UNRESOLVED) {
+
+                index = fieldIndex(this.name);
+                this.indices[type] = index;
+            }
+
+            return index;
+        }
+    }
 }
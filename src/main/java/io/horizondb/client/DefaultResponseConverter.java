@@ -34,6 +34,9 @@ public class DefaultResponseConverter implements ResponseConverter {
      */
     @Override
     public RecordSet convert(Msg<?> response, MsgChannel channel) {
+        
+        // No other message will be received for this request.
+        channel.close();
         return EMPTY_RECORD_SET;
     }
 }
@@ -0,0 +1,99 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Gathers all the references to the native epoll transport.
+ * <p>
+ * The <code>netty-transport-native-epoll</code> dependency is optional: this class is only loaded once the
+ * epoll transport has been selected, so that the clients using the NIO transport do not need it on their
+ * classpath.
+ * </p>
+ *
+ * @author Benjamin
+ *
+ */
+final class EpollSupport {
+
+    /**
+     * Checks if the native epoll transport can be used on this platform.
+     *
+     * @return <code>true</code> if the native epoll transport can be used, <code>false</code> otherwise.
+     */
+    static boolean isAvailable() {
+
+        return Epoll.isAvailable();
+    }
+
+    /**
+     * Returns the reason why the native epoll transport cannot be used.
+     *
+     * @return the reason why the native epoll transport cannot be used.
+     */
+    static Throwable unavailabilityCause() {
+
+        return Epoll.unavailabilityCause();
+    }
+
+    /**
+     * Creates a new epoll event loop group.
+     *
+     * @param numberOfThreads the number of I/O threads
+     * @param threadFactory the factory used to create the I/O threads
+     * @return a new epoll event loop group
+     */
+    static EventLoopGroup newEventLoopGroup(int numberOfThreads, ThreadFactory threadFactory) {
+
+        return new EpollEventLoopGroup(numberOfThreads, threadFactory);
+    }
+
+    /**
+     * Configures the specified bootstrap to open epoll channels with the epoll specific options of the
+     * specified configuration.
+     *
+     * @param bootstrap the bootstrap to configure
+     * @param configuration the client configuration
+     */
+    static void configure(Bootstrap bootstrap, ClientConfiguration configuration) {
+
+        bootstrap.channel(EpollSocketChannel.class);
+
+        if (configuration.getTcpKeepIdleInSeconds() > 0) {
+            bootstrap.option(EpollChannelOption.TCP_KEEPIDLE, Integer.valueOf(configuration.getTcpKeepIdleInSeconds()));
+        }
+
+        if (configuration.getTcpKeepIntervalInSeconds() > 0) {
+            bootstrap.option(EpollChannelOption.TCP_KEEPINTVL,
+                             Integer.valueOf(configuration.getTcpKeepIntervalInSeconds()));
+        }
+
+        if (configuration.getTcpKeepCount() > 0) {
+            bootstrap.option(EpollChannelOption.TCP_KEEPCNT, Integer.valueOf(configuration.getTcpKeepCount()));
+        }
+    }
+
+    private EpollSupport() {
+    }
+}
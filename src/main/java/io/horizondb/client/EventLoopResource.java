@@ -0,0 +1,148 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.apache.commons.lang.Validate.isTrue;
+
+/**
+ * The I/O threads used by the connections to the servers.
+ * <p>
+ * An <code>EventLoopResource</code> can be shared by several <code>HorizonDB</code> instances, through 
+ * <code>HorizonDB.Builder.setEventLoopResource</code>, to avoid each of them starting its own threads.
+ * The resource is reference counted: it is created with a count of one, held by its creator, each 
+ * <code>HorizonDB</code> using it retains it until it is closed, and the threads are shut down once the 
+ * last reference has been released.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public final class EventLoopResource {
+
+    /**
+     * The event loop group.
+     */
+    private final EventLoopGroup group;
+
+    /**
+     * <code>true</code> if the group uses the native epoll transport.
+     */
+    private final boolean epoll;
+
+    /**
+     * The reference count.
+     */
+    private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+    /**
+     * Creates a new <code>EventLoopResource</code> with the specified number of daemon threads using the 
+     * NIO transport.
+     * 
+     * @param numberOfThreads the number of I/O threads, 0 for the Netty default (twice the number of cores)
+     */
+    public EventLoopResource(int numberOfThreads) {
+
+        this(numberOfThreads, new DefaultThreadFactory("horizondb-io", true), Transport.NIO);
+    }
+
+    /**
+     * Creates a new <code>EventLoopResource</code>.
+     * 
+     * @param numberOfThreads the number of I/O threads, 0 for the Netty default (twice the number of cores)
+     * @param threadFactory the factory used to create the I/O threads
+     * @param transport the network transport
+     */
+    public EventLoopResource(int numberOfThreads, ThreadFactory threadFactory, Transport transport) {
+
+        isTrue(numberOfThreads >= 0, "The number of threads must not be negative.");
+
+        this.epoll = transport.isEpoll();
+        this.group = this.epoll ? EpollSupport.newEventLoopGroup(numberOfThreads, threadFactory)
+                                : new NioEventLoopGroup(numberOfThreads, threadFactory);
+    }
+
+    /**
+     * Increments the reference count of this resource.
+     * 
+     * @return this resource
+     * @throws IllegalStateException if the resource has already been released
+     */
+    public EventLoopResource retain() {
+
+        int count;
+
+        do {
+
+            count = this.referenceCount.get();
+
+            if (count == 0) {
+                throw new IllegalStateException("The event loop resource has already been released.");
+            }
+
+        } while (!this.referenceCount.compareAndSet(count, count + 1));
+
+        return this;
+    }
+
+    /**
+     * Decrements the reference count of this resource and shuts down the I/O threads if it reaches 0.
+     * 
+     * @throws IllegalStateException if the resource has already been released
+     */
+    public void release() {
+
+        int count;
+
+        do {
+
+            count = this.referenceCount.get();
+
+            if (count == 0) {
+                throw new IllegalStateException("The event loop resource has already been released.");
+            }
+
+        } while (!this.referenceCount.compareAndSet(count, count - 1));
+
+        if (count == 1) {
+            this.group.shutdownGracefully();
+        }
+    }
+
+    /**
+     * Returns the event loop group.
+     * 
+     * @return the event loop group.
+     */
+    EventLoopGroup getGroup() {
+        return this.group;
+    }
+
+    /**
+     * Returns <code>true</code> if the group uses the native epoll transport.
+     * 
+     * @return <code>true</code> if the group uses the native epoll transport.
+     */
+    boolean isEpoll() {
+        return this.epoll;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+/**
+ * Gives access to a field of the current record of a <code>RecordSet</code>.
+ * <p>
+ * The field name is resolved only once per record type, so reading a field through a 
+ * <code>FieldAccessor</code> is as fast as reading it by index.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public interface FieldAccessor {
+
+    /**
+     * Returns the name of the field.
+     * 
+     * @return the name of the field.
+     */
+    String getName();
+
+    /**
+     * Returns the value of the field of the current record as a time stamp in seconds.
+     * 
+     * @return the value of the field of the current record as a time stamp in seconds.
+     */
+    long getTimestampInSeconds();
+
+    /**
+     * Returns the value of the field of the current record as a time stamp in milliseconds.
+     * 
+     * @return the value of the field of the current record as a time stamp in milliseconds.
+     */
+    long getTimestampInMillis();
+
+    /**
+     * Returns the value of the field of the current record as a time stamp in microseconds.
+     * 
+     * @return the value of the field of the current record as a time stamp in microseconds.
+     */
+    long getTimestampInMicros();
+
+    /**
+     * Returns the value of the field of the current record as a time stamp in nanoseconds.
+     * 
+     * @return the value of the field of the current record as a time stamp in nanoseconds.
+     */
+    long getTimestampInNanos();
+
+    /**
+     * Returns the value of the field of the current record as a <code>long</code>.
+     * 
+     * @return the value of the field of the current record as a <code>long</code>.
+     */
+    long getLong();
+
+    /**
+     * Returns the value of the field of the current record as an <code>int</code>.
+     * 
+     * @return the value of the field of the current record as an <code>int</code>.
+     */
+    int getInt();
+
+    /**
+     * Returns the value of the field of the current record as a <code>byte</code>.
+     * 
+     * @return the value of the field of the current record as a <code>byte</code>.
+     */
+    int getByte();
+
+    /**
+     * Returns the mantissa of the decimal field of the current record.
+     * 
+     * @return the mantissa of the decimal field of the current record.
+     */
+    long getDecimalMantissa();
+
+    /**
+     * Returns the exponent of the decimal field of the current record.
+     * 
+     * @return the exponent of the decimal field of the current record.
+     */
+    byte getDecimalExponent();
+
+    /**
+     * Returns the value of the field of the current record as a double.
+     * 
+     * @return the value of the field of the current record as a double.
+     */
+    double getDouble();
+}
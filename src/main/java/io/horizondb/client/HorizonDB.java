@@ -13,8 +13,14 @@
  */
 package io.horizondb.client;
 
+import io.netty.util.concurrent.Future;
+
 import java.io.Closeable;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import static org.apache.commons.lang.Validate.isTrue;
 
 /**
  * Entry point to connect to an <code>HorizonDB</code> database server.
@@ -30,7 +36,8 @@ public final class HorizonDB implements Closeable {
 	private ConnectionManager connectionManager;
 	
 	/**
-     * Creates a connection to the database server.
+     * Creates a connection to the database server. The connection is borrowed from the connection pool 
+     * and returned to it when closed.
      * 
      * @return a connection to the database server
      */
@@ -48,9 +55,46 @@ public final class HorizonDB implements Closeable {
 	public Connection newConnection(String database) {
 	    
 	    Connection connection = newConnection();
-	    connection.execute("USE " + database + ";");
 	    
-	    return connection;
+	    try (RecordSet recordSet = connection.execute("USE " + database + ";")) {
+	        
+	        return connection;
+	        
+	    } catch (RuntimeException e) {
+	        
+	        // The connection must be returned to the pool if the database cannot be used.
+	        try {
+	            
+	            connection.close();
+	            
+	        } catch (IOException | RuntimeException suppressed) {
+	            
+	            e.addSuppressed(suppressed);
+	        }
+	        
+	        throw e;
+	    }
+	}
+	
+	/**
+	 * Creates a connection to the database server without blocking the calling thread.
+	 * 
+	 * @return the future connection to the database server
+	 */
+	public Future<Connection> newConnectionAsync() {
+	    
+	    return this.connectionManager.getSessionAsync();
+	}
+	
+	/**
+	 * Creates a connection to the specified database without blocking the calling thread.
+	 * 
+	 * @param database the name of the database to which the connection will connect to
+	 * @return the future connection to the specified database
+	 */
+	public Future<Connection> newConnectionAsync(String database) {
+	    
+	    return this.connectionManager.getSessionAsync(database);
 	}
 	
 	/**
@@ -111,7 +155,190 @@ public final class HorizonDB implements Closeable {
 	     */
 	    public Builder setQueryTimeoutInSeconds(int queryTimeout) {
 	        
-	        this.configuration.setQueryTimeoutInSeconds(queryTimeout);  
+	        return setQueryTimeout(queryTimeout, TimeUnit.SECONDS);
+	    }
+	    
+	    /**
+	     * Sets the query timeout. The timeout applies to each response awaited for a query and can be 
+	     * overridden for a given query with <code>Connection.execute(String, long, TimeUnit)</code>.
+	     * 
+	     * @param queryTimeout the new query timeout.
+	     * @param unit the unit of the timeout
+	     * @return this builder
+	     */
+	    public Builder setQueryTimeout(long queryTimeout, TimeUnit unit) {
+	        
+	        isTrue(unit.toMillis(queryTimeout) > 0, "The query timeout must be at least one millisecond.");
+	        this.configuration.setQueryTimeoutInMillis(unit.toMillis(queryTimeout));  
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the minimum number of connections kept open by the connection pool.
+	     * 
+	     * @param minPoolSize the minimum number of pooled connections.
+	     * @return this builder
+	     */
+	    public Builder setMinPoolSize(int minPoolSize) {
+	        
+	        this.configuration.setMinPoolSize(minPoolSize);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the maximum number of connections that can be opened by the connection pool.
+	     * 
+	     * @param maxPoolSize the maximum number of pooled connections.
+	     * @return this builder
+	     */
+	    public Builder setMaxPoolSize(int maxPoolSize) {
+	        
+	        this.configuration.setMaxPoolSize(maxPoolSize);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the time in seconds after which an idle pooled connection is closed.
+	     * 
+	     * @param maxIdleTime the maximum idle time in seconds.
+	     * @return this builder
+	     */
+	    public Builder setMaxIdleTimeInSeconds(int maxIdleTime) {
+	        
+	        this.configuration.setMaxIdleTimeInSeconds(maxIdleTime);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the maximum amount of time in seconds to wait for a pooled connection to become available.
+	     * 
+	     * @param borrowTimeout the borrow timeout in seconds.
+	     * @return this builder
+	     */
+	    public Builder setBorrowTimeoutInSeconds(int borrowTimeout) {
+	        
+	        this.configuration.setBorrowTimeoutInSeconds(borrowTimeout);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the water marks, in number of messages, used to control the reading of a connection. 
+	     * The reading is suspended when more than <code>high</code> messages have been received but not 
+	     * consumed, and resumed once the number of buffered messages is back below <code>low</code>.
+	     * 
+	     * @param low the low water mark in number of messages
+	     * @param high the high water mark in number of messages
+	     * @return this builder
+	     */
+	    public Builder setWaterMarksInMessages(int low, int high) {
+	        
+	        this.configuration.setLowWaterMarkInMessages(low);
+	        this.configuration.setHighWaterMarkInMessages(high);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the water marks, in bytes, used to control the reading of a connection.
+	     * The reading is suspended when more than <code>high</code> bytes have been received but not 
+	     * consumed, and resumed once the number of buffered bytes is back below <code>low</code>.
+	     * 
+	     * @param low the low water mark in bytes
+	     * @param high the high water mark in bytes
+	     * @return this builder
+	     */
+	    public Builder setWaterMarksInBytes(long low, long high) {
+	        
+	        this.configuration.setLowWaterMarkInBytes(low);
+	        this.configuration.setHighWaterMarkInBytes(high);
+	        return this;
+	    }
+	    
+	    /**
+	     * Enables the decoding of the data chunks on a background thread, ahead of the thread iterating 
+	     * over the records.
+	     * 
+	     * @param prefetchDepth the maximum number of chunks decoded ahead, 0 to disable the prefetching.
+	     * @return this builder
+	     */
+	    public Builder setPrefetchDepthInChunks(int prefetchDepth) {
+	        
+	        this.configuration.setPrefetchDepthInChunks(prefetchDepth);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the maximum number of threads decoding the data chunks ahead of the consumers. When all the 
+	     * threads are busy, the records of the new queries are decoded by the thread iterating over them.
+	     * 
+	     * @param maxPrefetchThreads the maximum number of prefetching threads
+	     * @return this builder
+	     */
+	    public Builder setMaxPrefetchThreads(int maxPrefetchThreads) {
+	        
+	        isTrue(maxPrefetchThreads > 0, "The maximum number of prefetching threads must be strictly greater than zero.");
+	        this.configuration.setMaxPrefetchThreads(maxPrefetchThreads);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the I/O threads shared with other <code>HorizonDB</code> instances. The resource is retained 
+	     * by the <code>HorizonDB</code> instance and released when it is closed. When a shared resource is 
+	     * used, the transport is the one of the resource.
+	     * 
+	     * @param eventLoopResource the shared I/O threads
+	     * @return this builder
+	     */
+	    public Builder setEventLoopResource(EventLoopResource eventLoopResource) {
+	        
+	        this.configuration.setEventLoopResource(eventLoopResource);
+	        return this;
+	    }
+	    
+	    /**
+	     * Sets the network transport used to connect to the server. By default the NIO transport is used.
+	     * 
+	     * @param transport the network transport
+	     * @return this builder
+	     */
+	    public Builder setTransport(Transport transport) {
+	        
+	        this.configuration.setTransport(transport);
+	        return this;
+	    }
+	    
+	    /**
+	     * Enables the TCP keep-alive on the connections to the server. The idle time, the interval and the
+	     * number of probes are only applied with the epoll transport: the NIO transport uses the system 
+	     * defaults.
+	     * 
+	     * @param idleInSeconds the time a connection must be idle before the first probe is sent
+	     * @param intervalInSeconds the interval between two probes, 0 for the system default
+	     * @param count the number of unanswered probes before the connection is dropped, 0 for the system 
+	     * default
+	     * @return this builder
+	     */
+	    public Builder setTcpKeepAlive(int idleInSeconds, int intervalInSeconds, int count) {
+	        
+	        isTrue(idleInSeconds > 0, "The keep-alive idle time must be strictly greater than zero.");
+	        isTrue(intervalInSeconds >= 0, "The keep-alive interval must not be negative.");
+	        isTrue(count >= 0, "The number of keep-alive probes must not be negative.");
+	        
+	        this.configuration.setTcpKeepIdleInSeconds(idleInSeconds);
+	        this.configuration.setTcpKeepIntervalInSeconds(intervalInSeconds);
+	        this.configuration.setTcpKeepCount(count);
+	        return this;
+	    }
+	    
+	    /**
+	     * Specifies if the network buffers must be allocated from a pool of direct buffers. The pooling is 
+	     * enabled by default.
+	     * 
+	     * @param pooledBuffers <code>true</code> if the network buffers must be allocated from a pool.
+	     * @return this builder
+	     */
+	    public Builder setPooledBuffers(boolean pooledBuffers) {
+	        
+	        this.configuration.setPooledBuffers(pooledBuffers);
 	        return this;
 	    }
 	    
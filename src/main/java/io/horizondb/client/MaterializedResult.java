@@ -0,0 +1,70 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A <code>RecordSet</code> fully held in memory, on which the cursor can be moved to any row.
+ * <p>
+ * The records are kept serialized in a compact form and decoded only when the cursor is moved on them.
+ * The rows are indexed from zero. Closing a <code>MaterializedResult</code> releases its memory.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public interface MaterializedResult extends RecordSet {
+
+    /**
+     * Returns the number of records.
+     * 
+     * @return the number of records.
+     */
+    int size();
+
+    /**
+     * Moves the cursor before the first record.
+     */
+    void beforeFirst();
+
+    /**
+     * Moves the cursor to the specified row.
+     * 
+     * @param row the row index
+     * @return <code>true</code> if the cursor is on a valid record, <code>false</code> if the row is after
+     * the last record
+     */
+    boolean absolute(int row);
+
+    /**
+     * Moves the cursor to the first record with a timestamp greater or equals to the specified one. 
+     * The records are located through a sparse index of their timestamps.
+     * 
+     * @param timestamp the timestamp
+     * @param unit the timestamp unit
+     * @return <code>true</code> if the cursor is on a valid record, <code>false</code> if all the records
+     * have a smaller timestamp
+     */
+    boolean seek(long timestamp, TimeUnit unit);
+
+    /**
+     * Returns the index of the current row, or <code>-1</code> if the cursor is before the first record.
+     * 
+     * @return the index of the current row.
+     */
+    int getRow();
+}
@@ -14,30 +14,62 @@
 package io.horizondb.client;
 
 import java.io.Closeable;
+import java.util.concurrent.TimeUnit;
 
 import io.horizondb.model.protocol.Msg;
+import io.netty.buffer.ByteBuf;
+import io.netty.util.concurrent.Future;
 
 /**
+ * Channel used to send a request to the server and to receive its responses.
+ * 
  * @author Benjamin
  *
  */
 interface MsgChannel extends Closeable {
 
     /**
-     * Send the specified request to the server.
+     * Send the specified request to the server. This method returns without waiting for the request to be
+     * written to the socket, a write failure is reported by the next call to <code>awaitResponse</code>.
      * @param request the request sent to the server.
      */
     void sendRequest(Msg<?> request);
 
     /**
-     * Await for a response from the server.
+     * Send the specified request to the server without blocking.
+     * @param request the request sent to the server.
+     * @return the future completed by the first response received from the server
+     */
+    Future<Msg<?>> sendRequestAsync(Msg<?> request);
+
+    /**
+     * Await for a response from the server. The message is backed by a network buffer which is released by 
+     * the next call to <code>awaitResponse</code> or by <code>close</code>: the message must not be used 
+     * after that.
      * @return the message received from the server
      */
     Msg<?> awaitResponse();
 
     /**
      * Await for the specified a amount of time for a response from the server.
+     * @param timeout the maximum amount of time to wait
+     * @param unit the unit of the timeout
      * @return the message received from the server
      */
-    Msg<?> awaitResponse(int timeoutInSeconds);
-}
\ No newline at end of file
+    Msg<?> awaitResponse(long timeout, TimeUnit unit);
+    
+    /**
+     * Returns the frame from which the last message returned by <code>awaitResponse</code> has been decoded. 
+     * The frame must not be released by the caller and must not be used after the next call to 
+     * <code>awaitResponse</code> or <code>close</code>.
+     * @return the frame of the last message returned by <code>awaitResponse</code>, or <code>null</code>.
+     */
+    ByteBuf getCurrentFrame();
+    
+    /**
+     * Stops listening for the responses to the last request sent and releases the buffers of the responses
+     * received. The underlying connection is not closed.
+     */
+    @Override
+    void close();
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.model.protocol.Msg;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Listener notified of the messages received from the server for a given request.
+ * 
+ * @author Benjamin
+ *
+ */
+interface MsgListener {
+
+    /**
+     * Notification that a message has been received for the request.
+     * <p>This method is called from the I/O thread and must not block.</p>
+     * <p>The listener becomes the owner of the frame from which the message has been decoded and must 
+     * release it once the message is no longer used, as the payload can still refer to the frame.</p>
+     * 
+     * @param message the message received from the server
+     * @param frame the frame from which the message has been decoded
+     * @param size the size in bytes of the message
+     */
+    void onMessage(Msg<?> message, ByteBuf frame, int size);
+
+    /**
+     * Notification that the connection has failed and that no more message will be received for the request.
+     * <p>This method is called from the I/O thread and must not block.</p>
+     * 
+     * @param cause the cause of the failure
+     */
+    void onFailure(Throwable cause);
+
+    /**
+     * Stops listening for the messages of the request and releases the frames that have not been consumed yet.
+     * <p>This method is called when the connection is closed, before the channel is returned to the pool.</p>
+     */
+    void close();
+}
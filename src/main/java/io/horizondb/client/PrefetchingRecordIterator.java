@@ -0,0 +1,471 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.ReadableBuffer;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.model.core.ResourceIterator;
+import io.horizondb.model.core.records.BinaryTimeSeriesRecord;
+import io.horizondb.model.protocol.DataChunkPayload;
+import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.schema.RecordSetDefinition;
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static io.horizondb.io.encoding.VarInts.readUnsignedInt;
+
+/**
+ * Iterator over the records streamed by the server that decodes the data chunks ahead of the consumer.
+ * <p>
+ * A background task waits for the data chunks and locates the records within them, using the type byte 
+ * and the length prefix of each record. The decoded chunks are handed to the consumer through a bounded 
+ * queue, so the decoding of the next chunks overlaps with the processing of the current one.
+ * </p>
+ * <p>
+ * The frames of the decoded chunks are retained instead of being copied, and released once their records 
+ * have been consumed. As with <code>StreamedRecordIterator</code>, the records of each type are read through
+ * their own view of the frame: a record is only valid until the next record of the same type is read or 
+ * the next chunk is consumed.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+final class PrefetchingRecordIterator implements ResourceIterator<BinaryTimeSeriesRecord>, RecordTypeFilterable {
+
+    /**
+     * The initial number of records for which some space is reserved in a decoded chunk.
+     */
+    private static final int INITIAL_CHUNK_CAPACITY = 64;
+
+    /**
+     * The channel from which the data chunks are received.
+     */
+    private final MsgChannel channel;
+
+    /**
+     * The binary records.
+     */
+    private final BinaryTimeSeriesRecord[] binaryRecords;
+
+    /**
+     * The chunks decoded ahead of the consumer.
+     */
+    private final BlockingQueue<DecodedChunk> ready;
+
+    /**
+     * The background decoding task.
+     */
+    private final Future<?> decoder;
+
+    /**
+     * The chunk being consumed.
+     */
+    private DecodedChunk chunk;
+
+    /**
+     * The index of the next record of the chunk being consumed.
+     */
+    private int index;
+
+    /**
+     * The views over the frame of the chunk being consumed, per record type, whose indices are moved to 
+     * the bounds of the last record read of that type.
+     */
+    private final ByteBuf[] regions;
+
+    /**
+     * The <code>ReadableBuffer</code>s wrapping the regions and passed to the binary records.
+     */
+    private final ReadableBuffer[] slices;
+
+    /**
+     * <code>true</code> if the end of the stream has been reached.
+     */
+    private boolean endOfStream;
+
+    /**
+     * <code>true</code> if this iterator has been closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * The accepted record types indexed by type or <code>null</code> if all the types are accepted.
+     */
+    private volatile boolean[] acceptedTypes;
+
+    /**
+     * Creates a new <code>PrefetchingRecordIterator</code> that will decode the chunks received from the
+     * specified channel.
+     * 
+     * @param definition the record set definition
+     * @param channel the channel from which the data chunks are received
+     * @param executor the executor running the decoding task
+     * @param depth the maximum number of chunks decoded ahead of the consumer
+     */
+    public PrefetchingRecordIterator(RecordSetDefinition definition, 
+                                     MsgChannel channel, 
+                                     ExecutorService executor, 
+                                     int depth) {
+
+        this.binaryRecords = definition.newBinaryRecords();
+        this.regions = new ByteBuf[this.binaryRecords.length];
+        this.slices = new ReadableBuffer[this.binaryRecords.length];
+        this.channel = channel;
+        this.ready = new ArrayBlockingQueue<>(depth);
+        this.decoder = executor.submit(new Decoder());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasNext() throws IOException {
+
+        while (!this.endOfStream && (this.chunk == null || this.index == this.chunk.size)) {
+
+            if (this.chunk != null && this.chunk.last) {
+
+                this.endOfStream = true;
+                close();
+                break;
+            }
+
+            release(this.chunk);
+            this.chunk = null;
+
+            Arrays.fill(this.regions, null);
+            Arrays.fill(this.slices, null);
+
+            this.chunk = take();
+            this.index = 0;
+
+            Throwable cause = this.chunk.cause;
+
+            if (cause != null) {
+
+                this.endOfStream = true;
+                close();
+
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+
+                throw new IOException(cause);
+            }
+        }
+
+        return !this.endOfStream;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BinaryTimeSeriesRecord next() throws IOException {
+
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        int i = this.index++;
+        int type = this.chunk.types[i];
+
+        if (this.regions[type] == null) {
+            this.regions[type] = this.chunk.frame.duplicate();
+            this.slices[type] = Buffers.wrap(this.regions[type]);
+        }
+
+        int offset = this.chunk.offsets[i];
+        this.regions[type].setIndex(offset, offset + this.chunk.lengths[i]);
+
+        BinaryTimeSeriesRecord next = this.binaryRecords[type];
+        next.fill(this.slices[type]);
+
+        return next;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAcceptedTypes(boolean[] acceptedTypes) {
+        this.acceptedTypes = acceptedTypes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.decoder.cancel(true);
+
+        release(this.chunk);
+        this.chunk = null;
+
+        // Waits for the decoder to hand over the chunk it is decoding, so that all the retained frames are
+        // in the queue.
+        synchronized (this) {
+
+            for (DecodedChunk decoded = this.ready.poll(); decoded != null; decoded = this.ready.poll()) {
+                release(decoded);
+            }
+
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Releases the frame of the specified chunk.
+     * 
+     * @param decoded the decoded chunk or <code>null</code>
+     */
+    private static void release(DecodedChunk decoded) {
+
+        if (decoded != null && decoded.frame != null) {
+            decoded.frame.release();
+        }
+    }
+
+    /**
+     * Takes the next decoded chunk, waiting for it if needed.
+     * 
+     * @return the next decoded chunk
+     */
+    private DecodedChunk take() {
+
+        try {
+
+            return this.ready.take();
+
+        } catch (InterruptedException e) {
+
+            Thread.currentThread().interrupt();
+            throw new HorizonDBException("", e);
+        }
+    }
+
+    /**
+     * The task decoding the data chunks.
+     */
+    private final class Decoder implements Runnable {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run() {
+
+            try {
+
+                DecodedChunk decoded;
+
+                do {
+
+                    @SuppressWarnings("unchecked")
+                    Msg<DataChunkPayload> msg = (Msg<DataChunkPayload>) PrefetchingRecordIterator.this.channel.awaitResponse();
+
+                    // The frame is released by the next call to awaitResponse, while the records are still 
+                    // waiting to be consumed, so it is retained until the chunk has been consumed. The 
+                    // chunk is handed over under the lock so that close() releases it if needed.
+                    synchronized (PrefetchingRecordIterator.this) {
+
+                        if (PrefetchingRecordIterator.this.closed) {
+                            return;
+                        }
+
+                        ByteBuf frame = PrefetchingRecordIterator.this.channel.getCurrentFrame().retain();
+
+                        try {
+
+                            decoded = decode(frame, msg.getPayload().getBuffer());
+
+                        } catch (IOException | RuntimeException e) {
+
+                            frame.release();
+                            throw e;
+                        }
+
+                        try {
+
+                            PrefetchingRecordIterator.this.ready.put(decoded);
+
+                        } catch (InterruptedException e) {
+
+                            release(decoded);
+                            throw e;
+                        }
+                    }
+
+                } while (!decoded.last && !PrefetchingRecordIterator.this.closed);
+
+            } catch (InterruptedException e) {
+
+                // The iterator has been closed.
+
+            } catch (IOException | RuntimeException e) {
+
+                if (!PrefetchingRecordIterator.this.closed) {
+
+                    try {
+
+                        // The error must not be dropped when the queue is full, otherwise the consumer 
+                        // would wait forever for the next chunk.
+                        PrefetchingRecordIterator.this.ready.put(new DecodedChunk(e));
+
+                    } catch (InterruptedException ie) {
+
+                        // The iterator has been closed.
+                    }
+                }
+            }
+        }
+
+        /**
+         * Locates the records of the specified chunk within its frame.
+         * 
+         * @param frame the frame of the chunk
+         * @param buffer the chunk buffer
+         * @return the decoded chunk
+         * @throws IOException if a problem occurs while reading the chunk
+         */
+        private DecodedChunk decode(ByteBuf frame, ReadableBuffer buffer) throws IOException {
+
+            DecodedChunk decoded = new DecodedChunk(frame, INITIAL_CHUNK_CAPACITY);
+            boolean[] accepted = PrefetchingRecordIterator.this.acceptedTypes;
+
+            // The data chunk is the last part of the frame.
+            int end = frame.writerIndex();
+
+            while (buffer.isReadable()) {
+
+                int type = buffer.readByte();
+
+                if (type == Msg.END_OF_STREAM_MARKER) {
+
+                    decoded.last = true;
+                    break;
+                }
+
+                int length = readUnsignedInt(buffer);
+
+                if (accepted != null && !accepted[type]) {
+
+                    buffer.skipBytes(length);
+                    continue;
+                }
+
+                decoded.add(type, end - buffer.readableBytes(), length);
+                buffer.skipBytes(length);
+            }
+
+            return decoded;
+        }
+    }
+
+    /**
+     * The location of the records of a data chunk within its frame.
+     */
+    private static final class DecodedChunk {
+
+        /**
+         * The retained frame of the chunk, or <code>null</code> if an error occurred.
+         */
+        private final ByteBuf frame;
+
+        /**
+         * The record types.
+         */
+        private byte[] types;
+
+        /**
+         * The offsets of the records within the frame.
+         */
+        private int[] offsets;
+
+        /**
+         * The lengths of the records.
+         */
+        private int[] lengths;
+
+        /**
+         * The number of records.
+         */
+        private int size;
+
+        /**
+         * <code>true</code> if this chunk is the last one of the stream.
+         */
+        private boolean last;
+
+        /**
+         * The error that occurred while receiving the chunk.
+         */
+        private final Throwable cause;
+
+        public DecodedChunk(ByteBuf frame, int capacity) {
+
+            this.frame = frame;
+            this.types = new byte[capacity];
+            this.offsets = new int[capacity];
+            this.lengths = new int[capacity];
+            this.cause = null;
+        }
+
+        public DecodedChunk(Throwable cause) {
+
+            this.frame = null;
+            this.types = new byte[0];
+            this.offsets = new int[0];
+            this.lengths = new int[0];
+            this.cause = cause;
+        }
+
+        /**
+         * Adds the specified record.
+         * 
+         * @param type the record type
+         * @param offset the offset of the record within the frame
+         * @param length the length of the record
+         */
+        public void add(int type, int offset, int length) {
+
+            if (this.size == this.types.length) {
+
+                this.types = Arrays.copyOf(this.types, this.size << 1);
+                this.offsets = Arrays.copyOf(this.offsets, this.size << 1);
+                this.lengths = Arrays.copyOf(this.lengths, this.size << 1);
+            }
+
+            this.types[this.size] = (byte) type;
+            this.offsets[this.size] = offset;
+            this.lengths[this.size++] = length;
+        }
+    }
+}
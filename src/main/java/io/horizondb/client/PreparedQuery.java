@@ -0,0 +1,133 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * An HQL query with parameters that can be executed many times with different values.
+ * <p>
+ * The parameters are marked in the query either by a <code>?</code> or by a name prefixed by a colon, 
+ * for example: <code>SELECT * FROM DAX WHERE timestamp &gt;= :start AND timestamp &lt; :end;</code>. 
+ * The positional parameters are indexed from zero in the order in which they appear in the query. A named
+ * parameter can be used several times in the same query.
+ * </p>
+ * <p>
+ * A <code>PreparedQuery</code> is not thread-safe.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public interface PreparedQuery {
+
+    /**
+     * Sets the specified parameter to the specified <code>long</code> value.
+     * 
+     * @param index the parameter index
+     * @param l the <code>long</code> value
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setLong(int index, long l);
+
+    /**
+     * Sets the specified parameter to the specified <code>long</code> value.
+     * 
+     * @param name the parameter name
+     * @param l the <code>long</code> value
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setLong(String name, long l);
+
+    /**
+     * Sets the specified parameter to the specified decimal value.
+     * 
+     * @param index the parameter index
+     * @param mantissa the decimal mantissa
+     * @param exponent the decimal exponent
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setDecimal(int index, long mantissa, int exponent);
+
+    /**
+     * Sets the specified parameter to the specified decimal value.
+     * 
+     * @param name the parameter name
+     * @param mantissa the decimal mantissa
+     * @param exponent the decimal exponent
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setDecimal(String name, long mantissa, int exponent);
+
+    /**
+     * Sets the specified parameter to the specified timestamp. The timestamp is sent as a date literal in 
+     * UTC, whatever the default time zone of the JVM.
+     * 
+     * @param index the parameter index
+     * @param l the timestamp in milliseconds since the epoch
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setTimestampInMillis(int index, long l);
+
+    /**
+     * Sets the specified parameter to the specified timestamp. The timestamp is sent as a date literal in 
+     * UTC, whatever the default time zone of the JVM.
+     * 
+     * @param name the parameter name
+     * @param l the timestamp in milliseconds since the epoch
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setTimestampInMillis(String name, long l);
+
+    /**
+     * Sets the specified parameter to the specified string. The string is quoted.
+     * 
+     * @param index the parameter index
+     * @param s the string
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setString(int index, String s);
+
+    /**
+     * Sets the specified parameter to the specified string. The string is quoted.
+     * 
+     * @param name the parameter name
+     * @param s the string
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery setString(String name, String s);
+
+    /**
+     * Clears the values of all the parameters.
+     * 
+     * @return this <code>PreparedQuery</code>
+     */
+    PreparedQuery clearParameters();
+
+    /**
+     * Executes the query with the current parameter values.
+     * 
+     * @return the result returned by the server.
+     */
+    RecordSet execute();
+
+    /**
+     * Executes the query with the current parameter values without blocking the calling thread.
+     * 
+     * @return the future result returned by the server.
+     */
+    Future<RecordSet> executeAsync();
+}
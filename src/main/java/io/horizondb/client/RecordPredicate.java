@@ -0,0 +1,40 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.model.core.records.TimeSeriesRecord;
+
+/**
+ * Condition that the records must satisfy to be returned by a <code>RecordSet</code>.
+ * <p>
+ * The predicates are evaluated on the full state of the record, once its delta has been applied, before
+ * the record is exposed by the <code>RecordSet</code>. The common predicates are created through
+ * {@link RecordPredicates}.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public interface RecordPredicate {
+
+    /**
+     * Returns <code>true</code> if the specified record must be returned.
+     * 
+     * @param record the record to test. The record must not be modified or kept.
+     * @return <code>true</code> if the specified record must be returned, <code>false</code> otherwise.
+     */
+    boolean test(TimeSeriesRecord record);
+}
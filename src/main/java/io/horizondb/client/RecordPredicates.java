@@ -0,0 +1,212 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.model.core.records.TimeSeriesRecord;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Factory methods for the common <code>RecordPredicate</code>s.
+ * <p>
+ * The field predicates read the field with the given index from every record they are evaluated on. 
+ * For the time series with several record types, they should be used together with 
+ * {@link RecordSet#setRecordTypes(int...)} or {@link #recordType(int, RecordPredicate)}.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+public final class RecordPredicates {
+
+    /**
+     * Returns a predicate accepting the records with a timestamp field within the specified range.
+     * 
+     * @param index the field index
+     * @param from the start of the range (inclusive)
+     * @param to the end of the range (exclusive)
+     * @param unit the unit of the range bounds
+     * @return a predicate accepting the records with a timestamp within the specified range
+     */
+    public static RecordPredicate timestampBetween(final int index, long from, long to, TimeUnit unit) {
+
+        final long fromInNanos = unit.toNanos(from);
+        final long toInNanos = unit.toNanos(to);
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+
+                long timestamp = record.getTimestampInNanos(index);
+                return timestamp >= fromInNanos && timestamp < toInNanos;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records with a <code>long</code> field within the specified range.
+     * 
+     * @param index the field index
+     * @param min the minimum value (inclusive)
+     * @param max the maximum value (inclusive)
+     * @return a predicate accepting the records with a value within the specified range
+     */
+    public static RecordPredicate longBetween(final int index, final long min, final long max) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+
+                long value = record.getLong(index);
+                return value >= min && value <= max;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records with a <code>double</code> field within the specified range.
+     * 
+     * @param index the field index
+     * @param min the minimum value (inclusive)
+     * @param max the maximum value (inclusive)
+     * @return a predicate accepting the records with a value within the specified range
+     */
+    public static RecordPredicate doubleBetween(final int index, final double min, final double max) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+
+                double value = record.getDouble(index);
+                return value >= min && value <= max;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records with a <code>byte</code> field equals to the specified 
+     * value.
+     * 
+     * @param index the field index
+     * @param value the expected value
+     * @return a predicate accepting the records with a <code>byte</code> field equals to the specified value
+     */
+    public static RecordPredicate byteEquals(final int index, final int value) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+                return record.getByte(index) == value;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate evaluating the specified predicate on the records of the specified type and 
+     * accepting the records of the other types.
+     * 
+     * @param type the record type index
+     * @param predicate the predicate applied to the records of the specified type
+     * @return a predicate evaluating the specified predicate on the records of the specified type
+     */
+    public static RecordPredicate recordType(final int type, final RecordPredicate predicate) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+                return record.getType() != type || predicate.test(record);
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records accepted by all the specified predicates.
+     * 
+     * @param predicates the predicates
+     * @return a predicate accepting the records accepted by all the specified predicates
+     */
+    public static RecordPredicate and(final RecordPredicate... predicates) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+
+                for (RecordPredicate predicate : predicates) {
+
+                    if (!predicate.test(record)) {
+                        return false;
+                    }
+                }
+
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records accepted by at least one of the specified predicates.
+     * 
+     * @param predicates the predicates
+     * @return a predicate accepting the records accepted by at least one of the specified predicates
+     */
+    public static RecordPredicate or(final RecordPredicate... predicates) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+
+                for (RecordPredicate predicate : predicates) {
+
+                    if (predicate.test(record)) {
+                        return true;
+                    }
+                }
+
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a predicate accepting the records rejected by the specified predicate.
+     * 
+     * @param predicate the predicate to negate
+     * @return a predicate accepting the records rejected by the specified predicate
+     */
+    public static RecordPredicate not(final RecordPredicate predicate) {
+
+        return new RecordPredicate() {
+
+            @Override
+            public boolean test(TimeSeriesRecord record) {
+                return !predicate.test(record);
+            }
+        };
+    }
+
+    /**
+     * Must not be instantiated.
+     */
+    private RecordPredicates() {
+    }
+}
@@ -0,0 +1,660 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.ReadableBuffer;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.model.core.Record;
+import io.horizondb.model.core.records.BinaryTimeSeriesRecord;
+import io.horizondb.model.core.records.TimeSeriesRecord;
+import io.horizondb.model.protocol.DataChunkPayload;
+import io.horizondb.model.protocol.DataHeaderPayload;
+import io.horizondb.model.protocol.ErrorPayload;
+import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.protocol.Msgs;
+import io.horizondb.model.protocol.OpCode;
+import io.horizondb.model.schema.RecordSetDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static io.horizondb.io.encoding.VarInts.readUnsignedInt;
+
+/**
+ * <code>Publisher</code> streaming the records returned by a query.
+ * <p>
+ * The query is sent when a subscriber subscribes. The records are decoded and pushed to the subscriber
+ * from the I/O thread as long as the subscriber has some outstanding demand. When the demand is exhausted,
+ * the channel stops reading from the socket until the subscriber requests more records, which lets the TCP
+ * flow control throttle the server. As the socket is shared, the other queries multiplexed on the same
+ * connection are throttled as well.
+ * </p>
+ * <p>
+ * To avoid an allocation per row, the record passed to <code>onNext</code> is reused for the following 
+ * records of the same type. A subscriber that needs to keep a record must copy it with 
+ * <code>newInstance</code>.
+ * </p>
+ * <p>
+ * An exception thrown by the subscriber cancels its subscription (rule 2.13): the publisher stops 
+ * delivering records and releases the frames it holds, but the other queries of the connection are not
+ * affected.
+ * </p>
+ * <p>
+ * The stream fails with a <code>QueryTimeoutException</code> if no response has been received for more 
+ * than the query timeout while the publisher was waiting for the server. The time spent waiting for the 
+ * subscriber demand is not counted.
+ * </p>
+ *
+ * @author Benjamin
+ *
+ */
+final class RecordPublisher implements Publisher<Record>, MsgListener {
+
+    /**
+     * The subscription given to the subscribers that have been rejected.
+     */
+    private static final Subscription NOOP_SUBSCRIPTION = new Subscription() {
+
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    /**
+     * The channel used to send the query.
+     */
+    private final Channel channel;
+
+    /**
+     * The handler routing the responses.
+     */
+    private final ClientHandler handler;
+
+    /**
+     * The query request.
+     */
+    private final Msg<?> request;
+
+    /**
+     * The timer used to detect the queries that time out.
+     */
+    private final Timer timer;
+
+    /**
+     * The query timeout in nanoseconds.
+     */
+    private final long queryTimeoutInNanos;
+
+    /**
+     * The pending timeout check or <code>null</code> if the subscriber has not subscribed yet.
+     */
+    private volatile Timeout timeout;
+
+    /**
+     * The time in nanoseconds at which the last response has been received or at which the publisher 
+     * started to wait for the server.
+     */
+    private long lastResponseTime;
+
+    /**
+     * <code>true</code> once a subscriber has subscribed.
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * The number of records requested by the subscriber and not yet delivered.
+     */
+    private final AtomicLong demand = new AtomicLong();
+
+    /**
+     * The data chunks received but not yet fully delivered. Only accessed from the I/O thread.
+     */
+    private final Deque<ReadableBuffer> chunks = new ArrayDeque<>();
+
+    /**
+     * The frames of the data chunks not yet fully delivered, in the same order than the chunks. 
+     * Only accessed from the I/O thread.
+     */
+    private final Deque<ByteBuf> frames = new ArrayDeque<>();
+
+    /**
+     * The subscriber.
+     */
+    private Subscriber<? super Record> subscriber;
+
+    /**
+     * The binary records used to decode the data chunks.
+     */
+    private BinaryTimeSeriesRecord[] binaryRecords;
+
+    /**
+     * The records holding the current state of each record type.
+     */
+    private TimeSeriesRecord[] records;
+
+    /**
+     * <code>true</code> if the stream has been completed, failed or cancelled. Only accessed from the I/O thread.
+     */
+    private boolean done;
+
+    /**
+     * <code>true</code> while the records are being delivered. Prevents the unbounded recursion that would
+     * occur if the subscriber requests more records from <code>onNext</code>.
+     */
+    private boolean draining;
+
+    /**
+     * <code>true</code> if this publisher has suspended the reading of the socket.
+     */
+    private boolean suspended;
+
+    /**
+     * The view over the frame of the chunk being delivered, whose indices are moved to the bounds of the 
+     * record being decoded, or <code>null</code> if it has not been created yet for that chunk.
+     */
+    private ByteBuf region;
+
+    /**
+     * The <code>ReadableBuffer</code> wrapping the region. It is passed to the binary records instead of a 
+     * new slice per record.
+     */
+    private ReadableBuffer slice;
+
+    /**
+     * Creates a new <code>RecordPublisher</code> that will send the specified request.
+     *
+     * @param channel the channel used to send the query
+     * @param timer the timer used to detect the queries that time out
+     * @param queryTimeoutInMillis the query timeout in milliseconds
+     * @param request the query request
+     */
+    public RecordPublisher(Channel channel, Timer timer, long queryTimeoutInMillis, Msg<?> request) {
+
+        this.channel = channel;
+        this.handler = channel.pipeline().get(ClientHandler.class);
+        this.timer = timer;
+        this.queryTimeoutInNanos = TimeUnit.MILLISECONDS.toNanos(queryTimeoutInMillis);
+        this.request = request;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe(Subscriber<? super Record> s) {
+
+        if (s == null) {
+            throw new NullPointerException("The subscriber must not be null.");
+        }
+
+        if (!this.subscribed.compareAndSet(false, true)) {
+
+            s.onSubscribe(NOOP_SUBSCRIPTION);
+            s.onError(new IllegalStateException("This publisher allows only a single subscriber."));
+            return;
+        }
+
+        this.subscriber = s;
+
+        try {
+
+            this.handler.register(this.request.getHeader().getRequestId(), this);
+
+        } catch (HorizonDBException e) {
+
+            s.onSubscribe(NOOP_SUBSCRIPTION);
+            s.onError(e);
+            return;
+        }
+
+        s.onSubscribe(new RecordSubscription());
+
+        this.lastResponseTime = System.nanoTime();
+        scheduleTimeoutCheck(this.queryTimeoutInNanos);
+
+        this.channel.writeAndFlush(this.request).addListener(new ChannelFutureListener() {
+
+            @Override
+            public void operationComplete(ChannelFuture future) {
+
+                if (!future.isSuccess()) {
+                    fail(new HorizonDBException("", future.cause()));
+                }
+            }
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onMessage(Msg<?> message, ByteBuf frame, int size) {
+
+        if (this.done || message.getOpCode() != OpCode.DATA_CHUNK || !message.getHeader().isSuccess()) {
+
+            // Only the data chunks refer to their frame once decoded.
+            frame.release();
+        }
+
+        if (this.done) {
+            return;
+        }
+
+        this.lastResponseTime = System.nanoTime();
+
+        if (!message.getHeader().isSuccess()) {
+
+            fail(new HorizonDBException((ErrorPayload) message.getPayload()));
+            return;
+        }
+
+        if (message.getOpCode() == OpCode.DATA_HEADER) {
+
+            DataHeaderPayload header = Msgs.getPayload(message);
+            RecordSetDefinition definition = header.getDefinition();
+
+            this.binaryRecords = definition.newBinaryRecords();
+            this.records = definition.newRecords();
+            return;
+        }
+
+        if (message.getOpCode() != OpCode.DATA_CHUNK) {
+
+            // The query does not return any record.
+            complete();
+            return;
+        }
+
+        DataChunkPayload payload = Msgs.getPayload(message);
+        this.chunks.addLast(payload.getBuffer());
+        this.frames.addLast(frame);
+
+        drain();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onFailure(Throwable cause) {
+
+        fail(cause);
+    }
+
+    /**
+     * Delivers the records received as long as the subscriber has some outstanding demand.
+     * Must be called from the I/O thread.
+     */
+    private void drain() {
+
+        if (this.draining) {
+            return;
+        }
+
+        this.draining = true;
+
+        try {
+
+            while (!this.done) {
+
+                ReadableBuffer buffer = this.chunks.peekFirst();
+
+                if (buffer == null) {
+
+                    resumeReading();
+                    return;
+                }
+
+                if (!buffer.isReadable()) {
+
+                    this.chunks.pollFirst();
+                    this.frames.pollFirst().release();
+                    this.region = null;
+                    this.slice = null;
+                    continue;
+                }
+
+                if (this.demand.get() == 0) {
+
+                    suspendReading();
+                    return;
+                }
+
+                int type = buffer.readByte();
+
+                if (type == Msg.END_OF_STREAM_MARKER) {
+
+                    complete();
+                    return;
+                }
+
+                int length = readUnsignedInt(buffer);
+
+                ByteBuf frame = this.frames.peekFirst();
+
+                if (this.region == null) {
+
+                    this.region = frame.duplicate();
+                    this.slice = Buffers.wrap(this.region);
+                }
+
+                // The data chunk is the last part of the frame.
+                int offset = frame.writerIndex() - buffer.readableBytes();
+                this.region.setIndex(offset, offset + length);
+                buffer.skipBytes(length);
+
+                BinaryTimeSeriesRecord binaryRecord = this.binaryRecords[type];
+                binaryRecord.fill(this.slice);
+
+                TimeSeriesRecord record = this.records[type];
+
+                if (binaryRecord.isDelta()) {
+
+                    record.add(binaryRecord);
+
+                } else {
+
+                    binaryRecord.copyTo(record);
+                }
+
+                this.demand.decrementAndGet();
+
+                try {
+
+                    this.subscriber.onNext(record);
+
+                } catch (Throwable t) {
+
+                    // The subscriber has violated the specification: only its subscription is cancelled.
+                    this.done = true;
+                    terminate();
+                    return;
+                }
+            }
+
+        } catch (IOException e) {
+
+            fail(new HorizonDBException("", e));
+
+        } finally {
+
+            this.draining = false;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * When called from outside the I/O thread, this method waits for the listener to be unregistered, so 
+     * that the connection is idle once it returns and can be handed back to the pool.
+     * </p>
+     */
+    @Override
+    public void close() {
+
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+
+                if (!RecordPublisher.this.done) {
+
+                    RecordPublisher.this.done = true;
+                    terminate();
+                }
+            }
+        };
+
+        if (this.channel.eventLoop().inEventLoop()) {
+
+            task.run();
+
+        } else {
+
+            this.channel.eventLoop().submit(task).awaitUninterruptibly();
+        }
+    }
+
+    /**
+     * Schedules the check of the query timeout after the specified delay.
+     *
+     * @param delayInNanos the delay in nanoseconds
+     */
+    private void scheduleTimeoutCheck(long delayInNanos) {
+
+        this.timeout = this.timer.newTimeout(new TimerTask() {
+
+            @Override
+            public void run(Timeout timeout) {
+
+                runInEventLoop(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        checkTimeout();
+                    }
+                });
+            }
+
+        }, delayInNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Fails the stream if no response has been received for more than the query timeout while waiting for
+     * the server. Must be called from the I/O thread.
+     */
+    private void checkTimeout() {
+
+        if (this.done) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        if (this.suspended || !this.chunks.isEmpty()) {
+
+            // The publisher is waiting for the subscriber, not for the server.
+            this.lastResponseTime = now;
+        }
+
+        long remaining = this.lastResponseTime + this.queryTimeoutInNanos - now;
+
+        if (remaining > 0) {
+
+            scheduleTimeoutCheck(remaining);
+            return;
+        }
+
+        fail(new QueryTimeoutException("No response has been received for more than "
+                + TimeUnit.NANOSECONDS.toMillis(this.queryTimeoutInNanos) + " milliseconds."));
+    }
+
+    /**
+     * Runs the specified task in the I/O thread of the channel.
+     *
+     * @param task the task to run
+     */
+    private void runInEventLoop(Runnable task) {
+
+        if (this.channel.eventLoop().inEventLoop()) {
+            task.run();
+        } else {
+            this.channel.eventLoop().execute(task);
+        }
+    }
+
+    /**
+     * Completes the stream.
+     */
+    private void complete() {
+
+        this.done = true;
+        terminate();
+
+        try {
+
+            this.subscriber.onComplete();
+
+        } catch (Throwable t) {
+
+            // The subscription is already terminated, so there is nothing left to cancel.
+        }
+    }
+
+    /**
+     * Fails the stream with the specified error. Must be called from the I/O thread.
+     *
+     * @param cause the error
+     */
+    private void fail(Throwable cause) {
+
+        if (this.done) {
+            return;
+        }
+
+        this.done = true;
+        terminate();
+
+        try {
+
+            this.subscriber.onError(cause);
+
+        } catch (Throwable t) {
+
+            // The subscription is already terminated, so there is nothing left to cancel.
+        }
+    }
+
+    /**
+     * Stops listening for the responses and resumes the reading of the socket.
+     */
+    private void terminate() {
+
+        this.handler.unregister(this.request.getHeader().getRequestId(), this);
+        this.chunks.clear();
+        this.region = null;
+        this.slice = null;
+
+        Timeout timeout = this.timeout;
+
+        if (timeout != null) {
+            timeout.cancel();
+        }
+
+        ByteBuf frame;
+
+        while ((frame = this.frames.pollFirst()) != null) {
+            frame.release();
+        }
+
+        resumeReading();
+    }
+
+    /**
+     * Suspends the reading of the socket until the subscriber requests more records.
+     */
+    private void suspendReading() {
+
+        if (!this.suspended) {
+
+            this.suspended = true;
+            this.handler.suspendReading();
+        }
+    }
+
+    /**
+     * Resumes the reading of the socket if it has been suspended by this publisher.
+     */
+    private void resumeReading() {
+
+        if (this.suspended) {
+
+            this.suspended = false;
+            this.handler.resumeReading();
+        }
+    }
+
+    /**
+     * The subscription given to the subscriber.
+     */
+    private final class RecordSubscription implements Subscription {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void request(long n) {
+
+            if (n <= 0) {
+
+                runInEventLoop(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        fail(new IllegalArgumentException("The number of requested records must be positive."));
+                    }
+                });
+                return;
+            }
+
+            long current;
+            long next;
+
+            do {
+
+                current = RecordPublisher.this.demand.get();
+                next = current + n < 0 ? Long.MAX_VALUE : current + n;
+
+            } while (!RecordPublisher.this.demand.compareAndSet(current, next));
+
+            runInEventLoop(new Runnable() {
+
+                @Override
+                public void run() {
+                    drain();
+                }
+            });
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void cancel() {
+
+            close();
+        }
+    }
+}
@@ -41,6 +41,78 @@ public interface RecordSet extends AutoCloseable {
      */
     boolean next();
 
+    /**
+     * Restricts the records returned by this <code>RecordSet</code> to the ones satisfying the specified 
+     * predicate. The rejected records are skipped by <code>next</code>, <code>nextBatch</code> and 
+     * <code>materialize</code> as soon as they have been decoded.
+     * 
+     * @param predicate the predicate that the records must satisfy, or <code>null</code> to return all 
+     * the records
+     * @return this <code>RecordSet</code>
+     */
+    RecordSet setPredicate(RecordPredicate predicate);
+
+    /**
+     * Restricts the records returned by this <code>RecordSet</code> to the specified record types. The 
+     * records of the other types are skipped without being decoded. This method must be called before the
+     * first call to <code>next</code>.
+     * 
+     * @param recordTypes the indices of the record types to return
+     * @return this <code>RecordSet</code>
+     */
+    RecordSet setRecordTypes(int... recordTypes);
+
+    /**
+     * Restricts the records returned by this <code>RecordSet</code> to the specified record types. The 
+     * records of the other types are skipped without being decoded. This method must be called before the
+     * first call to <code>next</code>.
+     * 
+     * @param recordTypes the names of the record types to return
+     * @return this <code>RecordSet</code>
+     */
+    RecordSet setRecordTypes(String... recordTypes);
+
+    /**
+     * Moves the cursor forward until the specified batch is full or the end of the record set is reached, 
+     * decoding the records of the batch type straight into the batch columns. The records of the other 
+     * types are skipped. The batch is cleared before being filled.
+     * <p>
+     * As only the fields of the batch columns are decoded, the following records of the batch type can 
+     * only be read through the same batch, until the next full record of that type. The current record
+     * is not defined anymore once this method has returned.
+     * </p>
+     * 
+     * @param batch the batch to fill
+     * @return the number of records copied into the batch, <code>0</code> if there are no more record
+     */
+    int nextBatch(ColumnBatch batch);
+
+    /**
+     * Reads all the remaining records of this <code>RecordSet</code> into a compact in-memory 
+     * <code>MaterializedResult</code> that can be read many times and in any order.
+     * 
+     * @return a <code>MaterializedResult</code> containing the remaining records.
+     */
+    MaterializedResult materialize();
+
+    /**
+     * Reads all the remaining records of this <code>RecordSet</code> into a <code>MaterializedResult</code>
+     * stored off-heap, in direct memory. The memory is released when the <code>MaterializedResult</code> 
+     * is closed, which must therefore always be done.
+     * 
+     * @return a <code>MaterializedResult</code> containing the remaining records.
+     */
+    MaterializedResult materializeOffHeap();
+
+    /**
+     * Reads all the remaining records of this <code>RecordSet</code> into a <code>MaterializedResult</code>
+     * spilled to a memory-mapped temporary file. The file is deleted when the <code>MaterializedResult</code> 
+     * is closed, which must therefore always be done.
+     * 
+     * @return a <code>MaterializedResult</code> containing the remaining records.
+     */
+    MaterializedResult materializeToFile();
+
     /**
      * Returns this record type.
      * 
@@ -208,6 +280,15 @@ public interface RecordSet extends AutoCloseable {
      */
     byte getDecimalExponent(String name);
     
+    /**
+     * Returns a <code>FieldAccessor</code> reading the field with the specified name from the current 
+     * record. The field name is resolved once per record type instead of once per read.
+     * 
+     * @param name the field name.
+     * @return a <code>FieldAccessor</code> reading the specified field.
+     */
+    FieldAccessor getFieldAccessor(String name);
+    
     /**
      * {@inheritDoc}
      */
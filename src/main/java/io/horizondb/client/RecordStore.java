@@ -0,0 +1,505 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.Buffer;
+import io.horizondb.io.ReadableBuffer;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.io.encoding.VarInts;
+import io.horizondb.model.core.ResourceIterator;
+import io.horizondb.model.core.records.BinaryTimeSeriesRecord;
+import io.horizondb.model.core.records.TimeSeriesRecord;
+import io.horizondb.model.schema.RecordSetDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static io.horizondb.io.encoding.VarInts.readUnsignedInt;
+
+/**
+ * Compact store of full records.
+ * <p>
+ * The records are serialized back-to-back in large segments, using the binary format of the data chunks, 
+ * and located through a primitive array of addresses. Storing a record does not create any object and
+ * any record can be read back by its row index. The timestamp of every <code>INDEX_INTERVAL</code>th 
+ * record is kept in a sparse index used to seek the records by timestamp.
+ * </p>
+ * <p>
+ * The segments can be allocated on the heap, off-heap in direct memory, or be mapped regions of a 
+ * temporary file. The direct memory and the file are only reclaimed when the store is released.
+ * </p>
+ * 
+ * @author Benjamin
+ *
+ */
+final class RecordStore {
+
+    /**
+     * Where the segments are allocated.
+     */
+    static enum Storage {
+        HEAP, DIRECT, MAPPED_FILE
+    }
+
+    /**
+     * The default size of the segments in bytes.
+     */
+    static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+    /**
+     * The default size of the mapped file regions in bytes.
+     */
+    static final int DEFAULT_MAPPED_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * The number of records between two entries of the timestamp index.
+     */
+    static final int INDEX_INTERVAL = 256;
+
+    /**
+     * The initial number of rows for which some space is reserved.
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    /**
+     * The maximum number of bytes used to encode the type and the length of a record.
+     */
+    private static final int MAX_RECORD_PREFIX_SIZE = 6;
+
+    /**
+     * The definition of the stored records.
+     */
+    private final RecordSetDefinition definition;
+
+    /**
+     * The size of the segments in bytes.
+     */
+    private final int segmentSize;
+
+    /**
+     * Where the segments are allocated.
+     */
+    private final Storage storage;
+
+    /**
+     * The segments containing the serialized records.
+     */
+    private final List<Buffer> segments = new ArrayList<>();
+
+    /**
+     * The Netty buffers backing the segments.
+     */
+    private final List<ByteBuf> byteBufs = new ArrayList<>();
+
+    /**
+     * The address of each record: the segment index in the high 32 bits and the offset within the segment 
+     * in the low 32 bits.
+     */
+    private long[] addresses = new long[INITIAL_CAPACITY];
+
+    /**
+     * The timestamps in nanoseconds of every <code>INDEX_INTERVAL</code>th record.
+     */
+    private long[] timestamps = new long[INITIAL_CAPACITY / INDEX_INTERVAL];
+
+    /**
+     * The number of records stored.
+     */
+    private int size;
+
+    /**
+     * The segment being filled.
+     */
+    private Buffer segment;
+
+    /**
+     * The number of bytes that can still be written in the current segment.
+     */
+    private int remaining;
+
+    /**
+     * The temporary file when the segments are mapped regions of a file.
+     */
+    private File file;
+
+    /**
+     * The channel used to map the file regions.
+     */
+    private FileChannel fileChannel;
+
+    /**
+     * The size of the file regions mapped so far.
+     */
+    private long fileSize;
+
+    /**
+     * The file regions mapped so far.
+     */
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+
+    /**
+     * Creates a new <code>RecordStore</code> for records of the specified definition.
+     * 
+     * @param definition the records definition
+     * @param segmentSize the size of the segments in bytes
+     * @param storage where the segments must be allocated
+     */
+    public RecordStore(RecordSetDefinition definition, int segmentSize, Storage storage) {
+
+        this.definition = definition;
+        this.segmentSize = segmentSize;
+        this.storage = storage;
+    }
+
+    /**
+     * Returns the number of records stored.
+     * 
+     * @return the number of records stored.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Appends the specified record. The record must contain the full state and not a delta.
+     * 
+     * @param record the record to append
+     * @throws IOException if a problem occurs while serializing the record
+     */
+    public void add(TimeSeriesRecord record) throws IOException {
+
+        int length = record.computeSerializedSize();
+        Buffer buffer = reserve(MAX_RECORD_PREFIX_SIZE + length);
+
+        int offset = buffer.writerIndex();
+
+        buffer.writeByte(record.getType());
+        VarInts.writeUnsignedInt(buffer, length);
+        record.writeTo(buffer);
+
+        this.remaining -= buffer.writerIndex() - offset;
+
+        if (this.size == this.addresses.length) {
+            this.addresses = Arrays.copyOf(this.addresses, this.size << 1);
+        }
+
+        if (this.size % INDEX_INTERVAL == 0) {
+
+            int entry = this.size / INDEX_INTERVAL;
+
+            if (entry == this.timestamps.length) {
+                this.timestamps = Arrays.copyOf(this.timestamps, Math.max(1, entry << 1));
+            }
+
+            this.timestamps[entry] = record.getTimestampInNanos(0);
+        }
+
+        this.addresses[this.size++] = ((long) (this.segments.size() - 1) << 32) | offset;
+    }
+
+    /**
+     * Returns a new cursor over the stored records.
+     * 
+     * @return a new cursor over the stored records.
+     */
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Releases the memory and the file used by this store.
+     */
+    public void release() {
+
+        for (ByteBuf byteBuf : this.byteBufs) {
+            byteBuf.release();
+        }
+
+        this.byteBufs.clear();
+        this.segments.clear();
+        this.segment = null;
+        this.addresses = new long[0];
+        this.timestamps = new long[0];
+        this.size = 0;
+
+        if (this.fileChannel != null) {
+
+            // The regions stay mapped until they are garbage collected, which would prevent the file from 
+            // being deleted on some platforms and keep its pages in the address space meanwhile.
+            for (MappedByteBuffer region : this.regions) {
+                PlatformDependent.freeDirectBuffer(region);
+            }
+
+            this.regions.clear();
+
+            try {
+
+                this.fileChannel.close();
+
+            } catch (IOException e) {
+
+                // Nothing can be done at this point, the file will still be deleted on exit.
+            }
+
+            this.fileChannel = null;
+            this.fileSize = 0;
+            this.file.delete();
+        }
+    }
+
+    /**
+     * Returns a segment with at least the specified number of bytes available.
+     * 
+     * @param length the number of bytes needed
+     * @return a segment with at least the specified number of bytes available
+     * @throws IOException if the file region cannot be mapped
+     */
+    private Buffer reserve(int length) throws IOException {
+
+        if (this.segment == null || this.remaining < length) {
+
+            this.remaining = Math.max(this.segmentSize, length);
+            this.segment = newSegment(this.remaining);
+            this.segments.add(this.segment);
+        }
+
+        return this.segment;
+    }
+
+    /**
+     * Allocates a new segment of the specified size.
+     * 
+     * @param capacity the segment size in bytes
+     * @return the new segment
+     * @throws IOException if the file region cannot be mapped
+     */
+    private Buffer newSegment(int capacity) throws IOException {
+
+        ByteBuf byteBuf;
+
+        switch (this.storage) {
+            case HEAP:
+                byteBuf = Unpooled.buffer(capacity, capacity);
+                break;
+            case DIRECT:
+                byteBuf = Unpooled.directBuffer(capacity, capacity);
+                break;
+            case MAPPED_FILE:
+                byteBuf = Unpooled.wrappedBuffer(mapRegion(capacity)).clear();
+                break;
+            default:
+                throw new IllegalStateException("Unknown storage: " + this.storage);
+        }
+
+        this.byteBufs.add(byteBuf);
+        return Buffers.wrap(byteBuf);
+    }
+
+    /**
+     * Maps a new region of the specified size at the end of the temporary file.
+     * 
+     * @param capacity the region size in bytes
+     * @return the mapped region
+     * @throws IOException if the file region cannot be mapped
+     */
+    @SuppressWarnings("resource")
+    private MappedByteBuffer mapRegion(int capacity) throws IOException {
+
+        if (this.fileChannel == null) {
+
+            this.file = File.createTempFile("horizondb-", ".records");
+            this.file.deleteOnExit();
+            this.fileChannel = new RandomAccessFile(this.file, "rw").getChannel();
+        }
+
+        MappedByteBuffer region = this.fileChannel.map(MapMode.READ_WRITE, this.fileSize, capacity);
+        this.fileSize += capacity;
+        this.regions.add(region);
+
+        return region;
+    }
+
+    /**
+     * Iterator over the stored records that can be moved to any row.
+     */
+    final class Cursor implements ResourceIterator<BinaryTimeSeriesRecord> {
+
+        /**
+         * The binary records used to read the stored records.
+         */
+        private final BinaryTimeSeriesRecord[] binaryRecords = RecordStore.this.definition.newBinaryRecords();
+
+        /**
+         * The index of the next record to read.
+         */
+        private int position;
+
+        /**
+         * The duplicates of the segments used to delimit the record being read, indexed by segment.
+         */
+        private ByteBuf[] regions = new ByteBuf[0];
+
+        /**
+         * The <code>ReadableBuffer</code>s wrapping the regions. They are passed to the binary records 
+         * instead of a new slice per record, so that the iteration does not allocate anything per record.
+         */
+        private ReadableBuffer[] views = new ReadableBuffer[0];
+
+        /**
+         * Returns the index of the next record to read.
+         * 
+         * @return the index of the next record to read.
+         */
+        public int getPosition() {
+            return this.position;
+        }
+
+        /**
+         * Moves this cursor so that the next record read will be the one with the specified index.
+         * 
+         * @param position the index of the next record to read
+         */
+        public void setPosition(int position) {
+            this.position = position;
+        }
+
+        /**
+         * Moves this cursor so that the next record read will be the first one with a timestamp greater or 
+         * equals to the specified one.
+         * 
+         * @param timestampInNanos the timestamp in nanoseconds
+         * @throws IOException if a problem occurs while reading the records
+         */
+        public void seek(long timestampInNanos) throws IOException {
+
+            int entries = (RecordStore.this.size + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+            int entry = Arrays.binarySearch(RecordStore.this.timestamps, 0, entries, timestampInNanos);
+
+            if (entry < 0) {
+                entry = -entry - 2;
+            }
+
+            // The previous entries might have the same timestamp.
+            while (entry > 0 && RecordStore.this.timestamps[entry] >= timestampInNanos) {
+                entry--;
+            }
+
+            int row = Math.max(0, entry) * INDEX_INTERVAL;
+
+            this.position = row;
+
+            while (hasNext() && next().getTimestampInNanos(0) < timestampInNanos) {
+                row++;
+            }
+
+            this.position = row;
+        }
+
+        /**
+         * Returns the number of records over which this cursor iterates.
+         * 
+         * @return the number of records over which this cursor iterates.
+         */
+        public int size() {
+            return RecordStore.this.size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean hasNext() {
+            return this.position < RecordStore.this.size;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public BinaryTimeSeriesRecord next() throws IOException {
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            long address = RecordStore.this.addresses[this.position++];
+            int segmentIndex = (int) (address >>> 32);
+
+            ByteBuf region = region(segmentIndex);
+            ReadableBuffer view = this.views[segmentIndex];
+
+            region.setIndex((int) address, region.capacity());
+
+            int type = view.readByte();
+            int length = readUnsignedInt(view);
+
+            region.writerIndex(region.readerIndex() + length);
+
+            BinaryTimeSeriesRecord next = this.binaryRecords[type];
+            next.fill(view);
+
+            return next;
+        }
+
+        /**
+         * Returns the region used to read the records of the specified segment.
+         * 
+         * @param segmentIndex the segment index
+         * @return the region used to read the records of the specified segment
+         */
+        private ByteBuf region(int segmentIndex) {
+
+            if (segmentIndex >= this.regions.length) {
+
+                int length = RecordStore.this.byteBufs.size();
+
+                this.regions = Arrays.copyOf(this.regions, length);
+                this.views = Arrays.copyOf(this.views, length);
+            }
+
+            ByteBuf region = this.regions[segmentIndex];
+
+            if (region == null) {
+
+                region = RecordStore.this.byteBufs.get(segmentIndex).duplicate();
+
+                this.regions[segmentIndex] = region;
+                this.views[segmentIndex] = Buffers.wrap(region);
+            }
+
+            return region;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            release();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+/**
+ * Record iterator that can skip the records of the types that are not accepted without decoding them.
+ * 
+ * @author Benjamin
+ *
+ */
+interface RecordTypeFilterable {
+
+    /**
+     * Restricts the records returned to the accepted types. The delta state of a record type only 
+     * depends on the records of this type, so skipping the other types does not affect it.
+     * 
+     * @param acceptedTypes the accepted types, indexed by record type
+     */
+    void setAcceptedTypes(boolean[] acceptedTypes);
+}
@@ -24,7 +24,23 @@ public class ResponseConverterDispatcher implements ResponseConverter {
 
     private ResponseConverter defaultConverter = new DefaultResponseConverter();
     
-    private ResponseConverter dataConverter = new DataChunkResponseConverter();
+    private ResponseConverter dataConverter;
+    
+    /**
+     * Creates a new <code>ResponseConverterDispatcher</code>.
+     */
+    public ResponseConverterDispatcher() {
+        this(new DataChunkResponseConverter());
+    }
+    
+    /**
+     * Creates a new <code>ResponseConverterDispatcher</code> using the specified converter for the data.
+     * 
+     * @param dataConverter the converter used for the data
+     */
+    public ResponseConverterDispatcher(ResponseConverter dataConverter) {
+        this.dataConverter = dataConverter;
+    }
     
     /**
      * {@inheritDoc}
@@ -14,24 +14,32 @@
 package io.horizondb.client;
 
 import io.horizondb.io.ReadableBuffer;
+import io.horizondb.io.buffers.Buffers;
 import io.horizondb.model.core.ResourceIterator;
 import io.horizondb.model.core.records.BinaryTimeSeriesRecord;
 import io.horizondb.model.protocol.DataChunkPayload;
 import io.horizondb.model.protocol.Msg;
 import io.horizondb.model.schema.RecordSetDefinition;
+import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.NoSuchElementException;
 
 import static io.horizondb.io.encoding.VarInts.readUnsignedInt;
 
 /**
  * <code>DefaultRecordSet</code> which is received as a stream from the server.
+ * <p>
+ * The records of each type are read through their own view of the chunk data, which is moved from record to
+ * record: a record is only valid until the next record of the same type is read or the next chunk is 
+ * received.
+ * </p>
  * 
  * @author Benjamin
  *
  */
-final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesRecord> {
+final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesRecord>, RecordTypeFilterable {
 
 	/**
 	 * The connection to the server.
@@ -39,9 +47,41 @@ final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesR
 	private final MsgChannel channel;
 	
 	/**
-	 * The buffer containing the data being processed.
+	 * The frame of the chunk being processed.
 	 */
-	private ReadableBuffer buffer;
+	private ByteBuf frame;
+	
+	/**
+	 * The view over the frame used to read the record headers.
+	 */
+	private ByteBuf region;
+	
+	/**
+	 * The position of the next record within the frame of the chunk being processed.
+	 */
+	private int position;
+	
+	/**
+	 * The end of the chunk being processed within its frame.
+	 */
+	private int limit;
+	
+	/**
+	 * The <code>ReadableBuffer</code> wrapping the region.
+	 */
+	private ReadableBuffer slice;
+	
+	/**
+	 * The views over the frame, per record type, whose indices are moved to the bounds of the last record 
+	 * read of that type. They are created once per chunk and type, instead of a new slice per record, so 
+	 * that the iteration does not allocate anything per record.
+	 */
+	private final ByteBuf[] recordRegions;
+	
+	/**
+	 * The <code>ReadableBuffer</code>s wrapping the record regions and passed to the binary records.
+	 */
+	private final ReadableBuffer[] recordSlices;
 		
 	/**
 	 * The binary records.
@@ -62,6 +102,16 @@ final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesR
 	 * <code>true</code> if the end of the stream has been reached.
 	 */
 	private boolean endOfStream;
+	
+	/**
+	 * <code>true</code> if the channel has been closed.
+	 */
+	private boolean closed;
+	
+	/**
+	 * The accepted record types indexed by type or <code>null</code> if all the types are accepted.
+	 */
+	private boolean[] acceptedTypes;
 		
 	/**
 	 * Creates a new <code>StreamedRecordIterator</code> for the specified queryPayload.
@@ -73,6 +123,8 @@ final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesR
     public StreamedRecordIterator(RecordSetDefinition definition, MsgChannel channel) {
     	
     	this.binaryRecords = definition.newBinaryRecords();
+    	this.recordRegions = new ByteBuf[this.binaryRecords.length];
+    	this.recordSlices = new ReadableBuffer[this.binaryRecords.length];
     	this.channel = channel;
     }
 
@@ -107,36 +159,107 @@ final class StreamedRecordIterator implements ResourceIterator<BinaryTimeSeriesR
     	return this.next;
 	}
 	
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void setAcceptedTypes(boolean[] acceptedTypes) {
+        this.acceptedTypes = acceptedTypes;
+    }
+
 	/**
 	 * {@inheritDoc}
 	 */
     @Override
     public void close() {
 
+        if (this.closed) {
+            return;
+        }
+        
+        this.closed = true;
+        
+        // If the stream has not been fully read, closing the channel unregisters the request so that the 
+        // remaining chunks are dropped by the ClientHandler as soon as they are received.
+        this.channel.close();
+        
+        this.frame = null;
+        this.region = null;
+        this.slice = null;
+        Arrays.fill(this.recordRegions, null);
+        Arrays.fill(this.recordSlices, null);
     }	
 
 	private boolean computeNext() throws IOException {
 
-	    if (this.buffer == null || !this.buffer.isReadable()) {
+	    int type;
+	    int length;
+
+	    do {
+
+	        if (this.region == null || this.position == this.limit) {
+
+	            Msg<DataChunkPayload> msg = (Msg<DataChunkPayload>) this.channel.awaitResponse();
+	            load(msg.getPayload().getBuffer());
+	        }
+
+	        this.region.setIndex(this.position, this.limit);
+	        type = this.slice.readByte();
 
-			Msg<DataChunkPayload> msg = (Msg<DataChunkPayload>) this.channel.awaitResponse();
-			this.buffer = msg.getPayload().getBuffer();
-		}
+	        if (type == Msg.END_OF_STREAM_MARKER) {
 
-		int type = this.buffer.readByte();
+	            this.endOfStream = true;
+	            close();
+	            return false;
+	        }
 
-		if (type == Msg.END_OF_STREAM_MARKER) {
-		    
-			this.endOfStream = true;
-			return false;
-		}
+	        length = readUnsignedInt(this.slice);
+	        this.position = this.region.readerIndex() + length;
 
-		int length = readUnsignedInt(this.buffer);
+	    } while (!isAccepted(type));
+
+	    if (this.recordRegions[type] == null) {
+	        this.recordRegions[type] = this.frame.duplicate();
+	        this.recordSlices[type] = Buffers.wrap(this.recordRegions[type]);
+	    }
+
+	    this.recordRegions[type].setIndex(this.region.readerIndex(), this.position);
 
 		this.next = this.binaryRecords[type];
-		this.next.fill(this.buffer.slice(length));
+		this.next.fill(this.recordSlices[type]);
 		this.nextReady = true;
 		
 		return true;
     }
+
+    /**
+     * Points the region at the frame of the specified chunk, without copying the chunk data. The frame 
+     * remains valid until the next call to <code>awaitResponse</code>, which is only made once all the 
+     * records of the chunk have been read.
+     * 
+     * @param buffer the chunk data
+     */
+    private void load(ReadableBuffer buffer) {
+
+        this.frame = this.channel.getCurrentFrame();
+
+        // The data chunk is the last part of the frame.
+        this.limit = this.frame.writerIndex();
+        this.position = this.limit - buffer.readableBytes();
+        this.region = this.frame.duplicate();
+        this.slice = Buffers.wrap(this.region);
+        Arrays.fill(this.recordRegions, null);
+        Arrays.fill(this.recordSlices, null);
+    }
+
+    /**
+     * Checks if the record with the specified type must be returned.
+     * 
+     * @param type the record type
+     * @return <code>true</code> if the record must be returned, <code>false</code> otherwise.
+     */
+    private boolean isAccepted(int type) {
+
+        return this.acceptedTypes == null || this.acceptedTypes[type];
+    }
 }
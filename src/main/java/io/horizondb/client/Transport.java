@@ -0,0 +1,87 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+/**
+ * The network transports that can be used to connect to the server.
+ * 
+ * @author Benjamin
+ *
+ */
+public enum Transport {
+
+    /**
+     * The portable transport based on Java NIO.
+     */
+    NIO,
+
+    /**
+     * The native epoll transport, only available on Linux. The sockets are used in edge-triggered mode.
+     * It requires the optional <code>netty-transport-native-epoll</code> dependency.
+     */
+    EPOLL,
+
+    /**
+     * The native epoll transport if it is available, the NIO transport otherwise.
+     */
+    AUTO;
+
+    /**
+     * Checks if this transport resolves to the native epoll transport.
+     * 
+     * @return <code>true</code> if the native epoll transport must be used, <code>false</code> if the NIO
+     * transport must be used.
+     * @throws HorizonDBException if the epoll transport has been explicitly requested but is not available
+     */
+    boolean isEpoll() {
+
+        switch (this) {
+
+            case EPOLL:
+
+                Throwable cause = epollUnavailabilityCause();
+
+                if (cause != null) {
+                    throw new HorizonDBException("The epoll transport is not available on this platform.", cause);
+                }
+                return true;
+
+            case AUTO:
+                return epollUnavailabilityCause() == null;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Returns the reason why the native epoll transport cannot be used. 
+     * 
+     * @return the reason why the native epoll transport cannot be used, or <code>null</code> if it can be used.
+     */
+    private static Throwable epollUnavailabilityCause() {
+
+        try {
+
+            return EpollSupport.isAvailable() ? null : EpollSupport.unavailabilityCause();
+
+        } catch (LinkageError e) {
+
+            // The optional netty-transport-native-epoll dependency is not on the classpath.
+            return e;
+        }
+    }
+}
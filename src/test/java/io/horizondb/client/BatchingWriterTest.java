@@ -0,0 +1,298 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.db.Configuration;
+import io.horizondb.db.HorizonServer;
+import io.horizondb.io.files.FileUtils;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BatchingWriterTest {
+
+    private Path testDirectory;
+
+    private HorizonServer server;
+
+    private HorizonDB client;
+
+    @Before
+    public void setUp() throws Exception {
+
+        this.testDirectory = Files.createTempDirectory("test");
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        this.server = new HorizonServer(configuration);
+        this.server.start();
+
+        this.client = HorizonDB.newBuilder(configuration.getPort()).build();
+
+        Connection connection = this.client.newConnection();
+        connection.execute("CREATE DATABASE test;");
+        connection.execute("USE test;");
+        connection.execute("CREATE TIMESERIES DAX (" +
+                " ExchangeState(timestampInMillis MILLISECONDS_TIMESTAMP, status BYTE)) TIME_UNIT = MILLISECONDS TIMEZONE = 'Europe/Berlin';");
+        connection.close();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+
+        try {
+
+            this.client.close();
+            this.server.shutdown();
+
+        } finally {
+
+            FileUtils.forceDelete(this.testDirectory);
+        }
+    }
+
+    @Test
+    public void testBatchIsSentWhenFull() throws Exception {
+
+        try (BatchingWriter writer = BatchingWriter.newBuilder(this.client, "test")
+                                                   .setBatchSize(2)
+                                                   .setLingerTimeInMillis(60000)
+                                                   .build()) {
+
+            insert(writer, 0);
+            insert(writer, 1);
+
+            assertEventuallyCount(2);
+        }
+    }
+
+    @Test
+    public void testBatchIsSentOnceTheLingerTimeIsReached() throws Exception {
+
+        try (BatchingWriter writer = BatchingWriter.newBuilder(this.client, "test")
+                                                   .setBatchSize(1000)
+                                                   .setLingerTimeInMillis(50)
+                                                   .build()) {
+
+            insert(writer, 0);
+
+            assertEventuallyCount(1);
+        }
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+
+        try (BatchingWriter writer = BatchingWriter.newBuilder(this.client, "test")
+                                                   .setBatchSize(1000)
+                                                   .setLingerTimeInMillis(60000)
+                                                   .build()) {
+
+            insert(writer, 0);
+            insert(writer, 1);
+            insert(writer, 2);
+
+            writer.flush();
+
+            assertEquals(3, count());
+        }
+    }
+
+    @Test
+    public void testCloseSendsThePendingBatches() throws Exception {
+
+        BatchingWriter writer = BatchingWriter.newBuilder(this.client, "test")
+                                              .setBatchSize(1000)
+                                              .setLingerTimeInMillis(60000)
+                                              .build();
+
+        insert(writer, 0);
+        insert(writer, 1);
+
+        writer.close();
+
+        assertEquals(2, count());
+
+        try {
+
+            insert(writer, 2);
+            fail();
+
+        } catch (HorizonDBException e) {
+
+            assertTrue(e.getMessage().contains("closed"));
+        }
+
+        // Closing twice must be a no-op.
+        writer.close();
+    }
+
+    @Test
+    public void testFailuresAreReportedByFlush() throws Exception {
+
+        try (BatchingWriter writer = BatchingWriter.newBuilder(this.client, "test")
+                                                   .setBatchSize(1)
+                                                   .setSenderThreads(1)
+                                                   .build()) {
+
+            writer.insert("DAX30", "ExchangeState", "'2013-11-14 11:46:00.000', '2013-11-14 11:46:00.000', 10");
+            writer.insert("DAX40", "ExchangeState", "'2013-11-14 11:46:00.000', '2013-11-14 11:46:00.000', 10");
+
+            try {
+
+                writer.flush();
+                fail();
+
+            } catch (HorizonDBException e) {
+
+                assertTrue(e.getCause() instanceof HorizonDBException);
+                assertEquals(1, e.getSuppressed().length);
+            }
+
+            // The failures are only reported once.
+            writer.flush();
+        }
+    }
+
+    @Test
+    public void testProducerBlocksWhenTheLingerBatchesReachTheBound() throws Exception {
+
+        // The server never answers, so the batch sent by the linger thread stays in flight until the query 
+        // times out.
+        try (ServerSocket server = new ServerSocket(0);
+             HorizonDB client = HorizonDB.newBuilder(server.getLocalPort())
+                                         .setMinPoolSize(0)
+                                         .setQueryTimeoutInSeconds(2)
+                                         .build()) {
+
+            final BatchingWriter writer = BatchingWriter.newBuilder(client, "test")
+                                                        .setBatchSize(1000)
+                                                        .setLingerTimeInMillis(10)
+                                                        .setMaxInFlightBatches(1)
+                                                        .setSenderThreads(1)
+                                                        .build();
+
+            insert(writer, 0);
+
+            Thread.sleep(200);
+
+            final CountDownLatch inserted = new CountDownLatch(1);
+
+            Thread producer = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    try {
+
+                        insert(writer, 1);
+
+                    } catch (HorizonDBException e) {
+
+                        // The failure of the first batch is reported to the producer.
+
+                    } finally {
+
+                        inserted.countDown();
+                    }
+                }
+            });
+
+            producer.start();
+
+            assertFalse(inserted.await(500, TimeUnit.MILLISECONDS));
+            assertTrue(inserted.await(10, TimeUnit.SECONDS));
+
+            try {
+
+                writer.close();
+
+            } catch (HorizonDBException e) {
+
+                // The pending batch cannot be sent to the silent server.
+            }
+        }
+    }
+
+    /**
+     * Inserts an ExchangeState record whose timestamp is offset by the specified number of milliseconds.
+     *
+     * @param writer the writer
+     * @param offset the offset of the record timestamp in milliseconds
+     */
+    private static void insert(BatchingWriter writer, int offset) {
+
+        String timestamp = String.format("'2013-11-14 11:46:00.%03d'", offset);
+        writer.insert("DAX", "ExchangeState", timestamp + ", " + timestamp + ", 10");
+    }
+
+    /**
+     * Waits for up to 5 seconds until the specified number of records have been inserted.
+     *
+     * @param expected the expected number of records
+     * @throws Exception if a problem occurs while reading the records
+     */
+    private void assertEventuallyCount(int expected) throws Exception {
+
+        long deadline = System.currentTimeMillis() + 5000;
+        int count = count();
+
+        while (count != expected && System.currentTimeMillis() < deadline) {
+
+            Thread.sleep(20);
+            count = count();
+        }
+
+        assertEquals(expected, count);
+    }
+
+    /**
+     * Counts the records inserted in the time series.
+     *
+     * @return the number of records
+     * @throws IOException if a problem occurs while reading the records
+     */
+    private int count() throws IOException {
+
+        try (Connection connection = this.client.newConnection("test");
+             RecordSet recordSet = connection.execute("SELECT * FROM DAX WHERE timestamp BETWEEN '2013-11-14 11:46:00' AND '2013-11-14 11:46:02';")) {
+
+            int count = 0;
+
+            while (recordSet.next()) {
+                count++;
+            }
+
+            return count;
+        }
+    }
+}
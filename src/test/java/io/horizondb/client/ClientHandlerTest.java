@@ -0,0 +1,243 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.Buffer;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.model.protocol.DataChunkPayload;
+import io.horizondb.model.protocol.HqlQueryPayload;
+import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.protocol.MsgHeader;
+import io.horizondb.model.protocol.OpCode;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import org.easymock.EasyMock;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClientHandlerTest {
+
+    @Test
+    public void testSuspendAndResumeReadingAreCounted() {
+
+        ClientHandler handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        handler.suspendReading();
+        handler.suspendReading();
+        assertFalse(channel.config().isAutoRead());
+        assertFalse(handler.isIdle());
+
+        handler.resumeReading();
+        assertFalse(channel.config().isAutoRead());
+
+        handler.resumeReading();
+        assertTrue(channel.config().isAutoRead());
+        assertTrue(handler.isIdle());
+    }
+
+    @Test
+    public void testWaterMarksInMessages() {
+
+        ClientConfiguration configuration = new ClientConfiguration(new InetSocketAddress(8553));
+        configuration.setLowWaterMarkInMessages(1);
+        configuration.setHighWaterMarkInMessages(2);
+
+        ClientHandler handler = new ClientHandler(configuration);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        handler.onBuffered(10);
+        handler.onBuffered(10);
+        assertTrue(channel.config().isAutoRead());
+
+        handler.onBuffered(10);
+        assertFalse(channel.config().isAutoRead());
+
+        handler.onConsumed(10);
+        assertFalse(channel.config().isAutoRead());
+
+        handler.onConsumed(10);
+        assertTrue(channel.config().isAutoRead());
+        assertFalse(handler.isIdle());
+
+        handler.onConsumed(10);
+        assertTrue(handler.isIdle());
+    }
+
+    @Test
+    public void testWaterMarksInBytes() {
+
+        ClientConfiguration configuration = new ClientConfiguration(new InetSocketAddress(8553));
+        configuration.setLowWaterMarkInBytes(100);
+        configuration.setHighWaterMarkInBytes(1000);
+
+        ClientHandler handler = new ClientHandler(configuration);
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        handler.onBuffered(600);
+        assertTrue(channel.config().isAutoRead());
+
+        handler.onBuffered(600);
+        assertFalse(channel.config().isAutoRead());
+
+        // An explicit suspension keeps the reading suspended once the water marks are back to normal.
+        handler.suspendReading();
+
+        handler.onConsumed(600);
+        handler.onConsumed(600);
+        assertFalse(channel.config().isAutoRead());
+
+        handler.resumeReading();
+        assertTrue(channel.config().isAutoRead());
+    }
+
+    @Test
+    public void testExceptionCaughtFailsTheListeners() {
+
+        ClientHandler handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        MsgListener listener = EasyMock.createMock(MsgListener.class);
+        listener.onFailure(EasyMock.isA(ConnectionFailureException.class));
+        EasyMock.expectLastCall().once();
+
+        EasyMock.replay(listener);
+
+        handler.register(1, listener);
+        channel.pipeline().fireExceptionCaught(new IOException("Connection reset by peer"));
+
+        // The channel becomes inactive as it is closed, but the listener must not be notified twice.
+        assertFalse(channel.isActive());
+        assertTrue(handler.isIdle());
+
+        EasyMock.verify(listener);
+    }
+
+    @Test
+    public void testChannelInactiveFailsTheListeners() {
+
+        ClientHandler handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        MsgListener listener = EasyMock.createMock(MsgListener.class);
+        listener.onFailure(EasyMock.isA(ConnectionFailureException.class));
+
+        EasyMock.replay(listener);
+
+        handler.register(1, listener);
+        channel.close();
+
+        EasyMock.verify(listener);
+    }
+
+    @Test
+    public void testFrameOfAnUnregisteredRequestIsReleasedWithoutParsingItsPayload() {
+
+        ClientHandler handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        MsgListener listener = EasyMock.createMock(MsgListener.class);
+        EasyMock.replay(listener);
+
+        Msg<HqlQueryPayload> registered = createRequest();
+        Msg<HqlQueryPayload> unregistered = createRequest();
+
+        handler.register(registered.getHeader().getRequestId(), listener);
+
+        ByteBuf frame = encode(newChunkMsg(unregistered));
+
+        // Truncates the payload announced by the header: parsing it would fail.
+        frame.writerIndex(MsgHeader.HEADER_SIZE);
+
+        channel.writeInbound(frame);
+
+        assertEquals(0, frame.refCnt());
+        assertTrue(channel.isActive());
+
+        EasyMock.verify(listener);
+    }
+
+    @Test
+    public void testFrameOfARegisteredRequestIsPassedToItsListener() {
+
+        ClientHandler handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        Msg<HqlQueryPayload> request = createRequest();
+        ByteBuf frame = encode(newChunkMsg(request));
+        int size = frame.readableBytes();
+
+        MsgListener listener = EasyMock.createMock(MsgListener.class);
+        listener.onMessage(EasyMock.<Msg<?>> isA(Msg.class), EasyMock.same(frame), EasyMock.eq(size));
+
+        EasyMock.replay(listener);
+
+        handler.register(request.getHeader().getRequestId(), listener);
+        channel.writeInbound(frame);
+
+        // The ownership of the frame has been passed to the listener.
+        assertEquals(1, frame.refCnt());
+
+        EasyMock.verify(listener);
+
+        frame.release();
+    }
+
+    /**
+     * Creates a query request.
+     *
+     * @return a query request
+     */
+    private static Msg<HqlQueryPayload> createRequest() {
+
+        return Msg.newRequestMsg(OpCode.HQL_QUERY, new HqlQueryPayload("test", "SELECT * FROM test;"));
+    }
+
+    /**
+     * Creates a data chunk response for the specified request.
+     *
+     * @param request the request
+     * @return a data chunk response
+     */
+    private static Msg<DataChunkPayload> newChunkMsg(Msg<?> request) {
+
+        Buffer buffer = Buffers.allocate(10);
+        buffer.writeByte(Msg.END_OF_STREAM_MARKER);
+
+        return Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(buffer));
+    }
+
+    /**
+     * Encodes the specified message into a frame.
+     *
+     * @param msg the message to encode
+     * @return the frame
+     */
+    private static ByteBuf encode(Msg<?> msg) {
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new MsgToByteEncoder());
+        encoder.writeOutbound(msg);
+
+        return (ByteBuf) encoder.readOutbound();
+    }
+}
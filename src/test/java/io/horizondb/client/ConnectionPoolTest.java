@@ -0,0 +1,372 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConnectionPoolTest {
+
+    /**
+     * The server socket accepting the connections. The connections are established by the backlog,
+     * so the server does not need to accept them.
+     */
+    private ServerSocket server;
+
+    private NioEventLoopGroup group;
+
+    private Bootstrap bootstrap;
+
+    private ConnectionPool pool;
+
+    @Before
+    public void setUp() throws IOException {
+
+        this.server = new ServerSocket(0);
+        this.group = new NioEventLoopGroup(1);
+        this.bootstrap = new Bootstrap().group(this.group)
+                                        .channel(NioSocketChannel.class)
+                                        .handler(new ChannelInboundHandlerAdapter());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+
+        if (this.pool != null) {
+            this.pool.close();
+        }
+
+        this.group.shutdownGracefully().awaitUninterruptibly();
+        this.server.close();
+    }
+
+    @Test
+    public void testReleasedChannelIsReused() {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 2), this.bootstrap);
+
+        Channel channel = this.pool.borrow();
+        this.pool.release(channel);
+
+        assertSame(channel, this.pool.borrow());
+    }
+
+    @Test
+    public void testMinPoolSize() {
+
+        this.pool = new ConnectionPool(newConfiguration(1, 1), this.bootstrap);
+
+        Channel channel = this.pool.borrow();
+
+        assertTrue(channel.isActive());
+    }
+
+    @Test
+    public void testBorrowTimeoutWhenMaxPoolSizeIsReached() {
+
+        ClientConfiguration configuration = newConfiguration(0, 1);
+        configuration.setBorrowTimeoutInSeconds(1);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        this.pool.borrow();
+
+        long start = System.nanoTime();
+
+        try {
+
+            this.pool.borrow();
+            fail();
+
+        } catch (ConnectionFailureException e) {
+
+            assertTrue(e.getMessage().startsWith("No connection became available"));
+            assertTrue(System.nanoTime() - start >= 900_000_000L);
+        }
+    }
+
+    @Test
+    public void testWaitingBorrowerReceivesTheReleasedChannel() throws InterruptedException {
+
+        ClientConfiguration configuration = newConfiguration(0, 1);
+        configuration.setBorrowTimeoutInSeconds(5);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        final Channel channel = this.pool.borrow();
+
+        Thread releaser = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    Thread.sleep(200);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                ConnectionPoolTest.this.pool.release(channel);
+            }
+        };
+
+        releaser.start();
+
+        assertSame(channel, this.pool.borrow());
+
+        releaser.join();
+    }
+
+    @Test
+    public void testFailedConnectionFreesItsSlot() throws IOException {
+
+        ServerSocket socket = new ServerSocket(0);
+        InetSocketAddress address = new InetSocketAddress("localhost", socket.getLocalPort());
+        socket.close();
+
+        ClientConfiguration configuration = new ClientConfiguration(address);
+        configuration.setMinPoolSize(0);
+        configuration.setMaxPoolSize(1);
+        configuration.setBorrowTimeoutInSeconds(1);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        for (int i = 0; i < 2; i++) {
+
+            try {
+
+                this.pool.borrow();
+                fail();
+
+            } catch (ConnectionFailureException e) {
+
+                // If the slot was not freed, the second attempt would time out instead.
+                assertTrue(e.getMessage().startsWith("Could not connect to the server"));
+            }
+        }
+    }
+
+    @Test
+    public void testClosedChannelIsNotReused() {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+
+        Channel channel = this.pool.borrow();
+        channel.close().awaitUninterruptibly();
+        this.pool.release(channel);
+
+        Channel other = this.pool.borrow();
+
+        assertNotSame(channel, other);
+        assertTrue(other.isActive());
+    }
+
+    @Test
+    public void testIdleChannelsAreEvicted() throws InterruptedException {
+
+        ClientConfiguration configuration = newConfiguration(0, 1);
+        configuration.setMaxIdleTimeInSeconds(1);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        Channel channel = this.pool.borrow();
+        this.pool.release(channel);
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (channel.isOpen() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+
+        assertFalse(channel.isOpen());
+        assertNotSame(channel, this.pool.borrow());
+    }
+
+    @Test
+    public void testBorrowAsyncOpensANewChannel() throws InterruptedException {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+
+        Future<Channel> future = this.pool.borrowAsync();
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertTrue(future.isSuccess());
+        assertTrue(future.getNow().isActive());
+    }
+
+    @Test
+    public void testBorrowAsyncNotifiesFromTheEventLoopOfTheIdleChannel() throws InterruptedException {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+
+        final Channel channel = this.pool.borrow();
+        this.pool.release(channel);
+
+        final AtomicBoolean inEventLoop = new AtomicBoolean();
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        Future<Channel> future = this.pool.borrowAsync();
+
+        assertTrue(future.isSuccess());
+        assertSame(channel, future.getNow());
+
+        future.addListener(new FutureListener<Channel>() {
+
+            @Override
+            public void operationComplete(Future<Channel> future) {
+
+                inEventLoop.set(channel.eventLoop().inEventLoop());
+                latch.countDown();
+            }
+        });
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(inEventLoop.get());
+    }
+
+    @Test
+    public void testBorrowAsyncWaitsForAReleasedChannel() throws InterruptedException {
+
+        ClientConfiguration configuration = newConfiguration(0, 1);
+        configuration.setBorrowTimeoutInSeconds(5);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        Channel channel = this.pool.borrow();
+
+        Future<Channel> future = this.pool.borrowAsync();
+
+        assertFalse(future.isDone());
+
+        this.pool.release(channel);
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertSame(channel, future.getNow());
+    }
+
+    @Test
+    public void testBorrowAsyncTimeout() throws InterruptedException {
+
+        ClientConfiguration configuration = newConfiguration(0, 1);
+        configuration.setBorrowTimeoutInSeconds(1);
+
+        this.pool = new ConnectionPool(configuration, this.bootstrap);
+
+        this.pool.borrow();
+
+        Future<Channel> future = this.pool.borrowAsync();
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cause() instanceof ConnectionFailureException);
+    }
+
+    @Test
+    public void testBorrowAsyncAfterClose() {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+        this.pool.close();
+
+        Future<Channel> future = this.pool.borrowAsync();
+
+        assertTrue(future.isDone());
+        assertTrue(future.cause() instanceof ConnectionFailureException);
+    }
+
+    @Test
+    public void testBorrowFromTheEventLoopIsRejected() throws Exception {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+
+        Future<Throwable> future = this.group.submit(new Callable<Throwable>() {
+
+            @Override
+            public Throwable call() {
+
+                try {
+
+                    ConnectionPoolTest.this.pool.borrow();
+                    return null;
+
+                } catch (IllegalStateException e) {
+
+                    return e;
+                }
+            }
+        });
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertTrue(future.getNow() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testBorrowAfterClose() {
+
+        this.pool = new ConnectionPool(newConfiguration(0, 1), this.bootstrap);
+        this.pool.close();
+
+        try {
+
+            this.pool.borrow();
+            fail();
+
+        } catch (ConnectionFailureException e) {
+
+            assertTrue(e.getMessage().contains("closed"));
+        }
+    }
+
+    /**
+     * Creates a new configuration for a pool connecting to the test server.
+     *
+     * @param minPoolSize the minimum pool size
+     * @param maxPoolSize the maximum pool size
+     * @return a new configuration
+     */
+    private ClientConfiguration newConfiguration(int minPoolSize, int maxPoolSize) {
+
+        ClientConfiguration configuration = new ClientConfiguration(new InetSocketAddress("localhost",
+                                                                                          this.server.getLocalPort()));
+        configuration.setMinPoolSize(minPoolSize);
+        configuration.setMaxPoolSize(maxPoolSize);
+        return configuration;
+    }
+}
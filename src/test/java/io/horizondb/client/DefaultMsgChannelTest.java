@@ -0,0 +1,374 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.Buffer;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.model.ErrorCodes;
+import io.horizondb.model.protocol.DataChunkPayload;
+import io.horizondb.model.protocol.HqlQueryPayload;
+import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.protocol.Msgs;
+import io.horizondb.model.protocol.OpCode;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.concurrent.Future;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DefaultMsgChannelTest {
+
+    private static ResourceLeakDetector.Level level;
+
+    private HashedWheelTimer timer;
+
+    private EmbeddedChannel channel;
+
+    @BeforeClass
+    public static void setUpClass() {
+
+        level = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.PARANOID);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+
+        ResourceLeakDetector.setLevel(level);
+    }
+
+    @Before
+    public void setUp() {
+
+        this.timer = new HashedWheelTimer();
+        this.channel = new EmbeddedChannel(new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553))));
+    }
+
+    @After
+    public void tearDown() {
+
+        this.channel.close();
+        this.timer.stop();
+    }
+
+    @Test
+    public void testCloseReleasesTheBufferedFrames() {
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+
+        Msg<HqlQueryPayload> request = createRequest();
+        msgChannel.sendRequest(request);
+
+        ByteBuf first = encode(newChunkMsg(request));
+        ByteBuf second = encode(newChunkMsg(request));
+
+        this.channel.writeInbound(first);
+        this.channel.writeInbound(second);
+
+        msgChannel.awaitResponse();
+
+        assertEquals(1, first.refCnt());
+        assertEquals(1, second.refCnt());
+
+        msgChannel.close();
+
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+    }
+
+    @Test
+    public void testErrorResponseReleasesItsFrame() {
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+
+        Msg<HqlQueryPayload> request = createRequest();
+        msgChannel.sendRequest(request);
+
+        ByteBuf frame = encode(Msgs.newErrorMsg(request.getHeader(), ErrorCodes.INVALID_QUERY, "Invalid query."));
+
+        this.channel.writeInbound(frame);
+
+        try {
+
+            msgChannel.awaitResponse();
+            fail();
+
+        } catch (HorizonDBException e) {
+
+            assertEquals(ErrorCodes.INVALID_QUERY, e.getCode());
+        }
+
+        assertEquals(0, frame.refCnt());
+
+        msgChannel.close();
+    }
+
+    @Test
+    public void testUnroutableResponseIsReleased() {
+
+        Msg<HqlQueryPayload> request = createRequest();
+
+        ByteBuf frame = encode(newChunkMsg(request));
+
+        this.channel.writeInbound(frame);
+
+        assertEquals(0, frame.refCnt());
+    }
+
+    @Test
+    public void testInterleavedResponsesAreRoutedToTheirRequest() {
+
+        DefaultMsgChannel firstChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+        DefaultMsgChannel secondChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+
+        Msg<HqlQueryPayload> firstRequest = createRequest();
+        Msg<HqlQueryPayload> secondRequest = createRequest();
+
+        firstChannel.sendRequest(firstRequest);
+        secondChannel.sendRequest(secondRequest);
+
+        this.channel.writeInbound(encode(newChunkMsg(secondRequest)));
+        this.channel.writeInbound(encode(newChunkMsg(firstRequest)));
+        this.channel.writeInbound(encode(newChunkMsg(secondRequest)));
+        this.channel.writeInbound(encode(newChunkMsg(firstRequest)));
+
+        long firstId = firstRequest.getHeader().getRequestId();
+        long secondId = secondRequest.getHeader().getRequestId();
+
+        assertEquals(firstId, firstChannel.awaitResponse().getHeader().getRequestId());
+        assertEquals(secondId, secondChannel.awaitResponse().getHeader().getRequestId());
+        assertEquals(secondId, secondChannel.awaitResponse().getHeader().getRequestId());
+        assertEquals(firstId, firstChannel.awaitResponse().getHeader().getRequestId());
+
+        firstChannel.close();
+        secondChannel.close();
+    }
+
+    @Test
+    public void testResponsesOfAnUnregisteredRequestAreDropped() {
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+
+        Msg<HqlQueryPayload> request = createRequest();
+        Msg<HqlQueryPayload> unregistered = createRequest();
+
+        msgChannel.sendRequest(request);
+
+        ByteBuf dropped = encode(newChunkMsg(unregistered));
+        ByteBuf routed = encode(newChunkMsg(request));
+
+        this.channel.writeInbound(dropped);
+        this.channel.writeInbound(routed);
+
+        assertEquals(0, dropped.refCnt());
+        assertEquals(request.getHeader().getRequestId(), msgChannel.awaitResponse().getHeader().getRequestId());
+
+        try {
+
+            msgChannel.awaitResponse(100, TimeUnit.MILLISECONDS);
+            fail();
+
+        } catch (QueryTimeoutException e) {
+
+            assertTrue(true);
+        }
+
+        msgChannel.close();
+
+        assertEquals(0, routed.refCnt());
+    }
+
+    @Test
+    public void testResponseReceivedAfterCloseIsReleased() {
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 1000);
+
+        Msg<HqlQueryPayload> request = createRequest();
+        msgChannel.sendRequest(request);
+        msgChannel.close();
+
+        ByteBuf frame = encode(newChunkMsg(request));
+
+        this.channel.writeInbound(frame);
+
+        assertEquals(0, frame.refCnt());
+    }
+
+    @Test
+    public void testCloseWakesUpTheAwaitingThread() throws InterruptedException {
+
+        final DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 10000);
+
+        msgChannel.sendRequest(createRequest());
+
+        Thread closer = new Thread() {
+
+            @Override
+            public void run() {
+
+                try {
+
+                    Thread.sleep(200);
+
+                } catch (InterruptedException e) {
+
+                    Thread.currentThread().interrupt();
+                }
+
+                msgChannel.close();
+            }
+        };
+
+        long start = System.nanoTime();
+        closer.start();
+
+        try {
+
+            msgChannel.awaitResponse();
+            fail();
+
+        } catch (HorizonDBException e) {
+
+            assertTrue(e.getMessage().contains("closed"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+
+        closer.join();
+    }
+
+    @Test
+    public void testAsynchronousRequestTimesOut() throws InterruptedException {
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 100);
+
+        Future<Msg<?>> future = msgChannel.sendRequestAsync(createRequest());
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cause() instanceof QueryTimeoutException);
+
+        msgChannel.close();
+    }
+
+    @Test
+    public void testFailedWriteIsReportedByAwaitResponse() {
+
+        failWrites();
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 10000);
+
+        msgChannel.sendRequest(createRequest());
+
+        long start = System.nanoTime();
+
+        try {
+
+            msgChannel.awaitResponse();
+            fail();
+
+        } catch (ConnectionFailureException e) {
+
+            assertTrue(e.getMessage().contains("could not be sent"));
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        }
+
+        msgChannel.close();
+    }
+
+    @Test
+    public void testFailedWriteFailsTheAsynchronousRequest() throws InterruptedException {
+
+        failWrites();
+
+        DefaultMsgChannel msgChannel = new DefaultMsgChannel(this.channel, this.timer, 10000);
+
+        Future<Msg<?>> future = msgChannel.sendRequestAsync(createRequest());
+
+        assertTrue(future.await(5, TimeUnit.SECONDS));
+        assertTrue(future.cause() instanceof ConnectionFailureException);
+
+        msgChannel.close();
+    }
+
+    /**
+     * Makes all the writes on the test channel fail as if the connection had been reset.
+     */
+    private void failWrites() {
+
+        this.channel.pipeline().addFirst(new ChannelOutboundHandlerAdapter() {
+
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+
+                promise.setFailure(new IOException("Connection reset by peer"));
+            }
+        });
+    }
+
+    /**
+     * Creates a query request.
+     *
+     * @return a query request
+     */
+    private static Msg<HqlQueryPayload> createRequest() {
+
+        return Msg.newRequestMsg(OpCode.HQL_QUERY, new HqlQueryPayload("test", "SELECT * FROM test;"));
+    }
+
+    /**
+     * Creates a data chunk response for the specified request.
+     *
+     * @param request the request
+     * @return a data chunk response
+     */
+    private static Msg<DataChunkPayload> newChunkMsg(Msg<?> request) {
+
+        Buffer buffer = Buffers.allocate(10);
+        buffer.writeByte(Msg.END_OF_STREAM_MARKER);
+
+        return Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(buffer));
+    }
+
+    /**
+     * Encodes the specified message into a frame.
+     *
+     * @param msg the message to encode
+     * @return the frame
+     */
+    private static ByteBuf encode(Msg<?> msg) {
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new MsgToByteEncoder());
+        encoder.writeOutbound(msg);
+
+        return (ByteBuf) encoder.readOutbound();
+    }
+}
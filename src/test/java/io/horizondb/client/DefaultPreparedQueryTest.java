@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DefaultPreparedQueryTest {
+
+    @Test
+    public void testWithPositionalParameters() {
+
+        DefaultPreparedQuery query = new DefaultPreparedQuery(null, "INSERT INTO DAX.Trade VALUES ('?', ?, ?);");
+
+        query.setDecimal(0, 125, -1).setLong(1, 10);
+        assertEquals("INSERT INTO DAX.Trade VALUES ('?', 125E-1, 10);", query.toQuery());
+
+        query.setDecimal(0, 12, 0).setLong(1, 5);
+        assertEquals("INSERT INTO DAX.Trade VALUES ('?', 12, 5);", query.toQuery());
+    }
+
+    @Test
+    public void testWithNamedParameters() {
+
+        DefaultPreparedQuery query = new DefaultPreparedQuery(null, 
+                                                              "SELECT * FROM DAX WHERE symbol = :symbol OR alias = :symbol;");
+
+        query.setString("symbol", "O'Neil");
+        assertEquals("SELECT * FROM DAX WHERE symbol = 'O''Neil' OR alias = 'O''Neil';", query.toQuery());
+    }
+
+    @Test
+    public void testTimestampIsFormattedInUTC() {
+
+        TimeZone defaultTimeZone = TimeZone.getDefault();
+
+        try {
+
+            TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+
+            DefaultPreparedQuery query = new DefaultPreparedQuery(null, "SELECT * FROM DAX WHERE timestamp > ?;");
+
+            query.setTimestampInMillis(0, 0);
+            assertEquals("SELECT * FROM DAX WHERE timestamp > '1970-01-01 00:00:00.000';", query.toQuery());
+
+            query.setTimestampInMillis(0, 1384429560123L);
+            assertEquals("SELECT * FROM DAX WHERE timestamp > '2013-11-14 11:46:00.123';", query.toQuery());
+
+        } finally {
+
+            TimeZone.setDefault(defaultTimeZone);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWithMissingParameter() {
+
+        DefaultPreparedQuery query = new DefaultPreparedQuery(null, "INSERT INTO DAX.Trade VALUES (?, ?);");
+
+        query.setLong(0, 10);
+        query.toQuery();
+    }
+}
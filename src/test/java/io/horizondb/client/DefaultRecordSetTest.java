@@ -23,8 +23,12 @@ import io.horizondb.model.schema.FieldType;
 import io.horizondb.model.schema.RecordTypeDefinition;
 import io.horizondb.model.schema.TimeSeriesDefinition;
 
+import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
@@ -35,6 +39,7 @@ import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * 
@@ -171,6 +176,50 @@ public class DefaultRecordSetTest {
         }
     }
 
+    @Test
+    public void testWithPredicateOnDeltas() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        TimeSeriesRecord third = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        third.setDelta(true);
+        third.setTimestampInNanos(0, 3500);
+        third.setByte(2, -2);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second, third));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            defaultRecordSet.setPredicate(RecordPredicates.timestampBetween(0, 13000, 14000, TimeUnit.MICROSECONDS));
+
+            assertTrue(defaultRecordSet.next());
+
+            assertEquals(13000900, defaultRecordSet.getTimestampInNanos(0));
+            assertEquals(3, defaultRecordSet.getByte(2));
+
+            defaultRecordSet.setPredicate(RecordPredicates.byteEquals(2, 3));
+
+            assertFalse(defaultRecordSet.next());
+        }
+    }
+
     @Test
     public void testWithDeltasAndFullState() {
 
@@ -224,6 +273,609 @@ public class DefaultRecordSetTest {
         }
     }
 
+    @Test
+    public void testWithFieldAccessors() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            FieldAccessor exchangeTimestamp = defaultRecordSet.getFieldAccessor("exchangeTimestamp");
+            FieldAccessor status = defaultRecordSet.getFieldAccessor("status");
+
+            assertTrue(defaultRecordSet.next());
+
+            assertEquals(12, exchangeTimestamp.getTimestampInMillis());
+            assertEquals(3, status.getByte());
+
+            assertTrue(defaultRecordSet.next());
+
+            assertEquals(13, exchangeTimestamp.getTimestampInMillis());
+            assertEquals(3, status.getByte());
+
+            assertFalse(defaultRecordSet.next());
+        }
+    }
+
+    @Test
+    public void testNextBatch() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        TimeSeriesRecord third = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        third.setDelta(true);
+        third.setTimestampInNanos(0, 3500);
+        third.setByte(2, -2);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second, third));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            ColumnBatch batch = new ColumnBatch(0, 2).addTimestampInNanosColumn(0)
+                                                     .addTimestampInMillisColumn(1)
+                                                     .addByteColumn(2);
+
+            assertEquals(2, defaultRecordSet.nextBatch(batch));
+
+            assertEquals(12000700, batch.getLongColumn(0)[0]);
+            assertEquals(12, batch.getLongColumn(1)[0]);
+            assertEquals(3, batch.getByteColumn(2)[0]);
+            assertEquals(13000900, batch.getLongColumn(0)[1]);
+            assertEquals(13, batch.getLongColumn(1)[1]);
+            assertEquals(3, batch.getByteColumn(2)[1]);
+
+            assertEquals(1, defaultRecordSet.nextBatch(batch));
+
+            assertEquals(13004400, batch.getLongColumn(0)[0]);
+            assertEquals(13, batch.getLongColumn(1)[0]);
+            assertEquals(1, batch.getByteColumn(2)[0]);
+
+            assertEquals(0, defaultRecordSet.nextBatch(batch));
+        }
+    }
+
+    @Test
+    public void testNextBatchWithDoubleColumnOverDecimalDeltas() throws IOException {
+
+        RecordTypeDefinition recordType = RecordTypeDefinition.newBuilder("Quote")
+                                                              .addDecimalField("price")
+                                                              .build();
+
+        TimeSeriesDefinition quotes = new DatabaseDefinition("test").newTimeSeriesDefinitionBuilder("quotes")
+                                                                    .timeUnit(TimeUnit.NANOSECONDS)
+                                                                    .addRecordType(recordType)
+                                                                    .build();
+
+        List<TimeSeriesRecord> records = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+
+            // Each record increments the price by 0.1.
+            TimeSeriesRecord record = new TimeSeriesRecord(0, TimeUnit.NANOSECONDS, FieldType.DECIMAL);
+            record.setDelta(i != 0);
+            record.setTimestampInNanos(0, 1000);
+            record.setDecimal(1, 1, -1);
+            records.add(record);
+        }
+
+        double[] expected = new double[records.size()];
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(quotes, new RecordIteratorStub(records))) {
+
+            for (int i = 0; defaultRecordSet.next(); i++) {
+                expected[i] = defaultRecordSet.getDouble(1);
+            }
+        }
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(quotes, new RecordIteratorStub(records))) {
+
+            ColumnBatch batch = new ColumnBatch(0, 100).addDoubleColumn(1);
+
+            for (int offset = 0; offset < expected.length; offset += 100) {
+
+                assertEquals(100, defaultRecordSet.nextBatch(batch));
+
+                for (int i = 0; i < 100; i++) {
+                    assertEquals(Double.doubleToLongBits(expected[offset + i]),
+                                 Double.doubleToLongBits(batch.getDoubleColumn(1)[i]));
+                }
+            }
+
+            assertEquals(0, defaultRecordSet.nextBatch(batch));
+        }
+    }
+
+    @Test
+    public void testNextBatchAfterNext() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            assertTrue(defaultRecordSet.next());
+            assertEquals(12000700, defaultRecordSet.getTimestampInNanos(0));
+
+            ColumnBatch batch = new ColumnBatch(0, 10).addTimestampInNanosColumn(0)
+                                                      .addByteColumn(2);
+
+            // The first delta is added to the record decoded by next.
+            assertEquals(2, defaultRecordSet.nextBatch(batch));
+
+            assertEquals(13000900, batch.getLongColumn(0)[0]);
+            assertEquals(3, batch.getByteColumn(2)[0]);
+            assertEquals(13004400, batch.getLongColumn(0)[1]);
+            assertEquals(1, batch.getByteColumn(2)[1]);
+        }
+    }
+
+    @Test
+    public void testNextAfterNextBatch() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            ColumnBatch batch = new ColumnBatch(0, 1).addTimestampInNanosColumn(0);
+
+            assertEquals(1, defaultRecordSet.nextBatch(batch));
+
+            // Only the batch columns are up to date, so the following deltas cannot be decoded by next.
+            try {
+
+                defaultRecordSet.next();
+                fail();
+
+            } catch (IllegalArgumentException e) {
+
+                assertTrue(e.getMessage().contains("nextBatch"));
+            }
+
+            try {
+
+                defaultRecordSet.nextBatch(new ColumnBatch(0, 1).addTimestampInNanosColumn(0));
+                fail();
+
+            } catch (IllegalArgumentException e) {
+
+                assertTrue(e.getMessage().contains("another batch"));
+            }
+        }
+    }
+
+    @Test
+    public void testNextBatchWithPredicate() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            // The first record is rejected but its state is still used to decode the following deltas.
+            defaultRecordSet.setPredicate(RecordPredicates.timestampBetween(0, 13000, 14000, TimeUnit.MICROSECONDS));
+
+            ColumnBatch batch = new ColumnBatch(0, 10).addTimestampInNanosColumn(0)
+                                                      .addTimestampInMillisColumn(1)
+                                                      .addByteColumn(2);
+
+            assertEquals(2, defaultRecordSet.nextBatch(batch));
+
+            assertEquals(13000900, batch.getLongColumn(0)[0]);
+            assertEquals(13, batch.getLongColumn(1)[0]);
+            assertEquals(3, batch.getByteColumn(2)[0]);
+            assertEquals(13004400, batch.getLongColumn(0)[1]);
+            assertEquals(13, batch.getLongColumn(1)[1]);
+            assertEquals(1, batch.getByteColumn(2)[1]);
+
+            assertEquals(0, defaultRecordSet.nextBatch(batch));
+        }
+    }
+
+    @Test
+    public void testNextBatchWithPredicateRejectingAllTheRecords() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            defaultRecordSet.setPredicate(RecordPredicates.byteEquals(2, 5));
+
+            ColumnBatch batch = new ColumnBatch(0, 10).addTimestampInNanosColumn(0);
+
+            assertEquals(0, defaultRecordSet.nextBatch(batch));
+        }
+    }
+
+    @Test
+    public void testMaterializeWithPredicate() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            defaultRecordSet.setPredicate(RecordPredicates.timestampBetween(0, 13000, 14000, TimeUnit.MICROSECONDS));
+
+            try (MaterializedResult result = defaultRecordSet.materialize()) {
+
+                assertEquals(2, result.size());
+
+                // The records are stored with their full state.
+                assertTrue(result.absolute(1));
+                assertEquals(13004400, result.getTimestampInNanos(0));
+                assertEquals(13, result.getTimestampInMillis(1));
+                assertEquals(1, result.getByte(2));
+
+                assertTrue(result.absolute(0));
+                assertEquals(13000900, result.getTimestampInNanos(0));
+                assertEquals(13, result.getTimestampInMillis(1));
+                assertEquals(3, result.getByte(2));
+
+                assertFalse(result.absolute(2));
+            }
+        }
+    }
+
+    @Test
+    public void testMaterializeWithPredicateOnRecordType() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            defaultRecordSet.setPredicate(RecordPredicates.recordType(0, RecordPredicates.byteEquals(2, 3)));
+
+            try (MaterializedResult result = defaultRecordSet.materialize()) {
+
+                assertEquals(2, result.size());
+
+                assertTrue(result.next());
+                assertEquals(12000700, result.getTimestampInNanos(0));
+
+                assertTrue(result.next());
+                assertEquals(13000900, result.getTimestampInNanos(0));
+
+                assertFalse(result.next());
+            }
+        }
+    }
+
+    @Test
+    public void testToListWithPredicate() throws IOException {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (DefaultRecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            defaultRecordSet.setPredicate(RecordPredicates.timestampBetween(0, 13000, 14000, TimeUnit.MICROSECONDS));
+
+            List<Record> records = defaultRecordSet.toList();
+
+            assertEquals(2, records.size());
+
+            // The records are returned with their full state.
+            assertFalse(records.get(0).isDelta());
+            assertEquals(13000900, records.get(0).getTimestampInNanos(0));
+            assertEquals(13, records.get(0).getTimestampInMillis(1));
+            assertEquals(3, records.get(0).getByte(2));
+
+            assertFalse(records.get(1).isDelta());
+            assertEquals(13004400, records.get(1).getTimestampInNanos(0));
+            assertEquals(13, records.get(1).getTimestampInMillis(1));
+            assertEquals(1, records.get(1).getByte(2));
+
+            assertTrue(defaultRecordSet.toList().isEmpty());
+        }
+    }
+
+    @Test
+    public void testColumnsMustBeDeclaredBeforeTheBatchIsFilled() {
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(newRecords());
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator)) {
+
+            ColumnBatch batch = new ColumnBatch(0, 1).addTimestampInNanosColumn(0);
+
+            defaultRecordSet.nextBatch(batch);
+
+            try {
+
+                batch.addByteColumn(2);
+                fail();
+
+            } catch (IllegalArgumentException e) {
+
+                assertTrue(e.getMessage().contains("declared before"));
+            }
+        }
+    }
+
+    @Test
+    public void testMaterialize() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        TimeSeriesRecord third = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        third.setDelta(true);
+        third.setTimestampInNanos(0, 3500);
+        third.setByte(2, -2);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second, third));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator);
+             MaterializedResult result = defaultRecordSet.materialize()) {
+
+            assertEquals(3, result.size());
+            assertEquals(-1, result.getRow());
+
+            assertTrue(result.absolute(2));
+            assertEquals(2, result.getRow());
+            assertEquals(13004400, result.getTimestampInNanos(0));
+            assertEquals(13, result.getTimestampInMillis(1));
+            assertEquals(1, result.getByte(2));
+
+            assertTrue(result.absolute(1));
+            assertEquals(13000900, result.getTimestampInNanos(0));
+            assertEquals(13, result.getTimestampInMillis(1));
+            assertEquals(3, result.getByte(2));
+
+            result.beforeFirst();
+
+            assertTrue(result.next());
+            assertEquals(12000700, result.getTimestampInNanos(0));
+            assertEquals(12, result.getTimestampInMillis(1));
+            assertEquals(3, result.getByte(2));
+
+            assertFalse(result.absolute(3));
+        }
+    }
+
+    @Test
+    public void testMaterializeOffHeap() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator);
+             MaterializedResult result = defaultRecordSet.materializeOffHeap()) {
+
+            assertEquals(2, result.size());
+
+            assertTrue(result.absolute(1));
+            assertEquals(13000900, result.getTimestampInNanos(0));
+            assertEquals(13, result.getTimestampInMillis(1));
+            assertEquals(3, result.getByte(2));
+
+            assertTrue(result.absolute(0));
+            assertEquals(12000700, result.getTimestampInNanos(0));
+            assertEquals(12, result.getTimestampInMillis(1));
+            assertEquals(3, result.getByte(2));
+        }
+    }
+
+    @Test
+    public void testMaterializeToFileAndSeek() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        TimeSeriesRecord third = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        third.setDelta(true);
+        third.setTimestampInNanos(0, 3500);
+        third.setByte(2, -2);
+
+        ResourceIterator<Record> iterator = new RecordIteratorStub(asList(first, second, third));
+
+        try (RecordSet defaultRecordSet = new DefaultRecordSet(this.definition, iterator);
+             MaterializedResult result = defaultRecordSet.materializeToFile()) {
+
+            assertTrue(result.seek(13000000, TimeUnit.NANOSECONDS));
+            assertEquals(1, result.getRow());
+            assertEquals(13000900, result.getTimestampInNanos(0));
+
+            assertTrue(result.seek(13004400, TimeUnit.NANOSECONDS));
+            assertEquals(2, result.getRow());
+            assertEquals(1, result.getByte(2));
+
+            assertTrue(result.seek(0, TimeUnit.NANOSECONDS));
+            assertEquals(0, result.getRow());
+            assertEquals(12000700, result.getTimestampInNanos(0));
+
+            assertFalse(result.seek(14, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @Test
+    public void testCursorAcrossSegments() throws IOException {
+
+        for (RecordStore.Storage storage : RecordStore.Storage.values()) {
+
+            // Each record is stored in its own segment.
+            RecordStore store = new RecordStore(this.definition, 8, storage);
+
+            try {
+
+                for (int i = 0; i < 3; i++) {
+
+                    TimeSeriesRecord record = new TimeSeriesRecord(0,
+                                                                   TimeUnit.NANOSECONDS,
+                                                                   FieldType.MILLISECONDS_TIMESTAMP,
+                                                                   FieldType.BYTE);
+                    record.setTimestampInNanos(0, 12000000 + i);
+                    record.setTimestampInMillis(1, 12);
+                    record.setByte(2, i);
+
+                    store.add(record);
+                }
+
+                RecordStore.Cursor cursor = store.newCursor();
+
+                for (int i = 0; i < 3; i++) {
+
+                    Record record = cursor.next();
+                    assertEquals(12000000 + i, record.getTimestampInNanos(0));
+                    assertEquals(i, record.getByte(2));
+                }
+
+                assertFalse(cursor.hasNext());
+
+                cursor.setPosition(1);
+
+                assertEquals(12000001, cursor.next().getTimestampInNanos(0));
+
+            } finally {
+
+                store.release();
+            }
+        }
+    }
+
+    @Test
+    public void testReleaseUnmapsAndDeletesTheFile() throws IOException {
+
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        FilenameFilter filter = new FilenameFilter() {
+
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("horizondb-") && name.endsWith(".records");
+            }
+        };
+
+        List<String> before = asList(directory.list(filter));
+
+        RecordStore store = new RecordStore(this.definition, 1024, RecordStore.Storage.MAPPED_FILE);
+
+        for (TimeSeriesRecord record : newRecords()) {
+
+            // The store only accepts full records.
+            record.setDelta(false);
+            store.add(record);
+        }
+
+        List<String> created = new ArrayList<>(asList(directory.list(filter)));
+        created.removeAll(before);
+
+        assertEquals(1, created.size());
+
+        store.release();
+
+        assertFalse(new File(directory, created.get(0)).exists());
+    }
+
+    /**
+     * Creates a full ExchangeState record followed by two deltas.
+     *
+     * @return the records
+     */
+    private static List<TimeSeriesRecord> newRecords() {
+
+        TimeSeriesRecord first = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        first.setTimestampInNanos(0, 12000700);
+        first.setTimestampInMillis(1, 12);
+        first.setByte(2, 3);
+
+        TimeSeriesRecord second = new TimeSeriesRecord(0,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        second.setDelta(true);
+        second.setTimestampInNanos(0, 1000200);
+        second.setTimestampInMillis(1, 1);
+
+        TimeSeriesRecord third = new TimeSeriesRecord(0,
+                                                      TimeUnit.NANOSECONDS,
+                                                      FieldType.MILLISECONDS_TIMESTAMP,
+                                                      FieldType.BYTE);
+        third.setDelta(true);
+        third.setTimestampInNanos(0, 3500);
+        third.setByte(2, -2);
+
+        return asList(first, second, third);
+    }
+
     private static class RecordIteratorStub implements ResourceIterator<Record> {
 
         private final Iterator<? extends Record> iterator;
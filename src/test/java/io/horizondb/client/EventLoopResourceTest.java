@@ -0,0 +1,80 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class EventLoopResourceTest {
+
+    @Test
+    public void testShutdownOnLastRelease() {
+
+        EventLoopResource resource = new EventLoopResource(1);
+
+        resource.retain();
+        resource.release();
+
+        assertFalse(resource.getGroup().isShuttingDown());
+
+        resource.release();
+
+        assertTrue(resource.getGroup().isShuttingDown());
+
+        try {
+
+            resource.retain();
+            fail();
+
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+
+        try {
+
+            resource.release();
+            fail();
+
+        } catch (IllegalStateException e) {
+            assertTrue(true);
+        }
+    }
+
+    @Test
+    public void testClosingTwiceReleasesTheSharedResourceOnce() {
+
+        EventLoopResource resource = new EventLoopResource(1);
+
+        HorizonDB first = HorizonDB.newBuilder(8553).setMinPoolSize(0).setEventLoopResource(resource).build();
+        HorizonDB second = HorizonDB.newBuilder(8553).setMinPoolSize(0).setEventLoopResource(resource).build();
+
+        first.close();
+        first.close();
+
+        assertFalse(resource.getGroup().isShuttingDown());
+
+        second.close();
+
+        assertFalse(resource.getGroup().isShuttingDown());
+
+        resource.release();
+
+        assertTrue(resource.getGroup().isShuttingDown());
+    }
+}
@@ -21,14 +21,18 @@ import io.horizondb.model.ErrorCodes;
 import io.horizondb.model.core.util.TimeUtils;
 import io.horizondb.model.schema.RecordSetDefinition;
 import io.horizondb.test.AssertFiles;
+import io.netty.util.concurrent.Future;
 
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.net.ServerSocket;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Assert;
@@ -1944,6 +1948,315 @@ public class HorizonDBTest {
         }
     }
     
+    @Test
+    public void testPipelinedQueriesWithResultsAboveHighWaterMark() throws Exception {
+
+        long timestamp = TimeUtils.parseDateTime("2013-11-14 11:46:00.000");
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        HorizonServer server = new HorizonServer(configuration);
+
+        try {
+
+            server.start();
+
+            // With a high water mark of 1 byte, the reading of the socket is suspended as soon as one 
+            // response is buffered.
+            try (HorizonDB client = HorizonDB.newBuilder(configuration.getPort())
+                                             .setQueryTimeoutInSeconds(10)
+                                             .setWaterMarksInBytes(0, 1)
+                                             .build()) {
+
+                Connection connection = client.newConnection();
+                
+                createAndFillTimeSeries(connection);
+
+                String query = "SELECT * FROM DAX WHERE timestamp BETWEEN " + timestamp + "ms AND " 
+                        + (timestamp + 1000) + "ms;";
+
+                List<RecordSet> recordSets = connection.executePipelined(Arrays.asList(query, query, query));
+
+                assertEquals(3, recordSets.size());
+
+                for (RecordSet recordSet : recordSets) {
+
+                    try (RecordSet rs = recordSet) {
+
+                        int count = 0;
+
+                        while (rs.next()) {
+                            count++;
+                        }
+
+                        assertEquals(7, count);
+                    }
+                }
+            }
+        } finally {
+
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testPipelinedQueriesWithFailingQuery() throws Exception {
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        HorizonServer server = new HorizonServer(configuration);
+
+        try {
+
+            server.start();
+
+            try (HorizonDB client = HorizonDB.newBuilder(configuration.getPort()).setQueryTimeoutInSeconds(10).build()) {
+
+                Connection connection = client.newConnection();
+                
+                createAndFillTimeSeries(connection);
+
+                try {
+
+                    connection.executePipelined(Arrays.asList("SELECT * FROM DAX;", 
+                                                              "SELECT * FROM DAX30;", 
+                                                              "SELECT * FROM DAX;"));
+                    fail();
+
+                } catch (HorizonDBException e) {
+
+                    assertError(ErrorCodes.UNKNOWN_TIMESERIES, "dax30", e);
+                }
+
+                // The connection must still be usable.
+                try (RecordSet recordSet = connection.execute("SELECT * FROM DAX;")) {
+
+                    assertTrue(recordSet.next());
+                }
+            }
+        } finally {
+
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testPerQueryTimeoutWithASilentServer() throws Exception {
+
+        // The server accepts the connections through its backlog but never answers.
+        try (ServerSocket server = new ServerSocket(0);
+             HorizonDB client = HorizonDB.newBuilder(server.getLocalPort()).setMinPoolSize(0).build()) {
+
+            Connection connection = client.newConnection();
+
+            long start = System.nanoTime();
+
+            try {
+
+                connection.execute("SELECT * FROM DAX;", 200, TimeUnit.MILLISECONDS);
+                fail();
+
+            } catch (QueryTimeoutException e) {
+
+                assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+            }
+
+            Future<RecordSet> future = connection.executeAsync("SELECT * FROM DAX;", 200, TimeUnit.MILLISECONDS);
+
+            assertTrue(future.await(5, TimeUnit.SECONDS));
+            assertTrue(future.cause() instanceof QueryTimeoutException);
+        }
+    }
+
+    @Test
+    public void testConfiguredTimeoutWithAsynchronousQuery() throws Exception {
+
+        try (ServerSocket server = new ServerSocket(0);
+             HorizonDB client = HorizonDB.newBuilder(server.getLocalPort())
+                                         .setMinPoolSize(0)
+                                         .setQueryTimeout(200, TimeUnit.MILLISECONDS)
+                                         .build()) {
+
+            Future<RecordSet> future = client.newConnection().executeAsync("SELECT * FROM DAX;");
+
+            assertTrue(future.await(5, TimeUnit.SECONDS));
+            assertTrue(future.cause() instanceof QueryTimeoutException);
+        }
+    }
+
+    @Test
+    public void testAsynchronousConnectionsAndQueries() throws Exception {
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        HorizonServer server = new HorizonServer(configuration);
+
+        try {
+
+            server.start();
+
+            try (HorizonDB client = HorizonDB.newBuilder(configuration.getPort()).build()) {
+
+                Future<Connection> connectionFuture = client.newConnectionAsync();
+
+                assertTrue(connectionFuture.await(5, TimeUnit.SECONDS));
+                assertTrue(connectionFuture.isSuccess());
+
+                try (Connection connection = connectionFuture.getNow()) {
+
+                    Future<RecordSet> future = connection.executeAsync("CREATE DATABASE test;");
+
+                    assertTrue(future.await(5, TimeUnit.SECONDS));
+                    assertTrue(future.isSuccess());
+                }
+
+                connectionFuture = client.newConnectionAsync("test");
+
+                assertTrue(connectionFuture.await(5, TimeUnit.SECONDS));
+                assertTrue(connectionFuture.isSuccess());
+
+                try (Connection connection = connectionFuture.getNow()) {
+
+                    Future<RecordSet> future = connection.executeAsync("CREATE TIMESERIES DAX (" +
+                            " ExchangeState(timestampInMillis MILLISECONDS_TIMESTAMP, status BYTE))" +
+                            " TIME_UNIT = MILLISECONDS TIMEZONE = 'Europe/Berlin';");
+
+                    assertTrue(future.await(5, TimeUnit.SECONDS));
+                    assertTrue(future.isSuccess());
+                }
+            }
+
+        } finally {
+
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testAsynchronousConnectionWithNonExistingDatabase() throws Exception {
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        HorizonServer server = new HorizonServer(configuration);
+
+        try {
+
+            server.start();
+
+            try (HorizonDB client = HorizonDB.newBuilder(configuration.getPort())
+                                             .setMinPoolSize(0)
+                                             .setMaxPoolSize(1)
+                                             .build()) {
+
+                Future<Connection> future = client.newConnectionAsync("test");
+
+                assertTrue(future.await(5, TimeUnit.SECONDS));
+                assertTrue(future.cause() instanceof HorizonDBException);
+                assertEquals(ErrorCodes.UNKNOWN_DATABASE, ((HorizonDBException) future.cause()).getCode());
+
+                // The connection must have been returned to the pool.
+                future = client.newConnectionAsync();
+
+                assertTrue(future.await(5, TimeUnit.SECONDS));
+                assertTrue(future.isSuccess());
+
+                future.getNow().close();
+            }
+
+        } finally {
+
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testConnectionWithNonExistingDatabase() throws Exception {
+
+        Configuration configuration = Configuration.newBuilder()
+                                                   .commitLogDirectory(this.testDirectory.resolve("commitLog"))
+                                                   .dataDirectory(this.testDirectory.resolve("data"))
+                                                   .build();
+
+        HorizonServer server = new HorizonServer(configuration);
+
+        try {
+
+            server.start();
+
+            try (HorizonDB client = HorizonDB.newBuilder(configuration.getPort())
+                                             .setMinPoolSize(0)
+                                             .setMaxPoolSize(1)
+                                             .build()) {
+
+                try {
+
+                    client.newConnection("test");
+                    fail();
+
+                } catch (HorizonDBException e) {
+
+                    assertEquals(ErrorCodes.UNKNOWN_DATABASE, e.getCode());
+                }
+
+                // The connection must have been returned to the pool.
+                Connection connection = client.newConnection();
+                connection.close();
+            }
+
+        } finally {
+
+            server.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQueryTimeoutMustBePositive() {
+
+        HorizonDB.newBuilder(8553).setQueryTimeout(0, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testPerQueryTimeoutMustBePositive() throws Exception {
+
+        try (ServerSocket server = new ServerSocket(0);
+             HorizonDB client = HorizonDB.newBuilder(server.getLocalPort()).setMinPoolSize(0).build()) {
+
+            Connection connection = client.newConnection();
+
+            try {
+
+                connection.execute("SELECT * FROM DAX;", 0, TimeUnit.MILLISECONDS);
+                fail();
+
+            } catch (IllegalArgumentException e) {
+
+                assertTrue(true);
+            }
+
+            try {
+
+                connection.executeAsync("SELECT * FROM DAX;", 100, TimeUnit.MICROSECONDS);
+                fail();
+
+            } catch (IllegalArgumentException e) {
+
+                assertTrue(true);
+            }
+        }
+    }
+
     private static void createAndFillTimeSeries(Connection connection) {
         
         
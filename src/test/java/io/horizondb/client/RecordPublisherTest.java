@@ -0,0 +1,360 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.horizondb.io.Buffer;
+import io.horizondb.io.ByteWriter;
+import io.horizondb.io.buffers.Buffers;
+import io.horizondb.io.encoding.VarInts;
+import io.horizondb.model.core.Record;
+import io.horizondb.model.core.records.TimeSeriesRecord;
+import io.horizondb.model.protocol.DataChunkPayload;
+import io.horizondb.model.protocol.DataHeaderPayload;
+import io.horizondb.model.protocol.HqlQueryPayload;
+import io.horizondb.model.protocol.Msg;
+import io.horizondb.model.protocol.OpCode;
+import io.horizondb.model.schema.DatabaseDefinition;
+import io.horizondb.model.schema.FieldType;
+import io.horizondb.model.schema.RecordTypeDefinition;
+import io.horizondb.model.schema.TimeSeriesDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.HashedWheelTimer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordPublisherTest {
+
+    private TimeSeriesDefinition definition;
+
+    private ClientHandler handler;
+
+    private EmbeddedChannel channel;
+
+    private Msg<HqlQueryPayload> request;
+
+    private HashedWheelTimer timer;
+
+    @Before
+    public void setUp() {
+
+        RecordTypeDefinition recordType = RecordTypeDefinition.newBuilder("ExchangeState")
+                                                              .addMillisecondTimestampField("exchangeTimestamp")
+                                                              .addByteField("status")
+                                                              .build();
+
+        DatabaseDefinition databaseDefinition = new DatabaseDefinition("test");
+
+        this.definition = databaseDefinition.newTimeSeriesDefinitionBuilder("test")
+                                            .timeUnit(TimeUnit.NANOSECONDS)
+                                            .addRecordType(recordType)
+                                            .build();
+
+        this.handler = new ClientHandler(new ClientConfiguration(new InetSocketAddress(8553)));
+        this.channel = new EmbeddedChannel(this.handler);
+        this.request = Msg.newRequestMsg(OpCode.HQL_QUERY, new HqlQueryPayload("test", "SELECT * FROM test;"));
+        this.timer = new HashedWheelTimer(10, TimeUnit.MILLISECONDS);
+    }
+
+    @After
+    public void tearDown() {
+
+        this.timer.stop();
+    }
+
+    @Test
+    public void testRecordsAreDeliveredAccordingToTheDemand() throws IOException {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 30000, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        this.channel.writeInbound(newHeaderFrame());
+
+        ByteBuf frame = newChunkFrame(3, true);
+        this.channel.writeInbound(frame);
+
+        assertEquals(1, subscriber.records.size());
+        assertEquals(12000000, subscriber.records.get(0).getTimestampInNanos(0));
+
+        // The demand is exhausted, so the reading of the socket is suspended.
+        assertFalse(this.channel.config().isAutoRead());
+        assertEquals(1, frame.refCnt());
+
+        subscriber.subscription.request(2);
+
+        assertEquals(3, subscriber.records.size());
+        assertEquals(12000001, subscriber.records.get(1).getTimestampInNanos(0));
+        assertEquals(12000002, subscriber.records.get(2).getTimestampInNanos(0));
+        assertFalse(subscriber.completed);
+
+        // The end of stream marker is only read once some demand is outstanding.
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+        assertTrue(this.channel.config().isAutoRead());
+        assertEquals(0, frame.refCnt());
+        assertTrue(this.handler.isIdle());
+    }
+
+    @Test
+    public void testCompletion() throws IOException {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 30000, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        this.channel.writeInbound(newHeaderFrame());
+
+        ByteBuf first = newChunkFrame(2, false);
+        ByteBuf second = newChunkFrame(1, true);
+
+        this.channel.writeInbound(first);
+        this.channel.writeInbound(second);
+
+        assertEquals(3, subscriber.records.size());
+        assertTrue(subscriber.completed);
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+        assertTrue(this.handler.isIdle());
+    }
+
+    @Test
+    public void testCancel() throws IOException {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 30000, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        this.channel.writeInbound(newHeaderFrame());
+
+        ByteBuf frame = newChunkFrame(3, true);
+        this.channel.writeInbound(frame);
+
+        subscriber.subscription.cancel();
+
+        assertEquals(0, frame.refCnt());
+        assertTrue(this.channel.config().isAutoRead());
+        assertTrue(this.handler.isIdle());
+
+        subscriber.subscription.request(2);
+
+        assertEquals(1, subscriber.records.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void testSubscriberExceptionCancelsTheSubscription() throws IOException {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 30000, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber() {
+
+            @Override
+            public void onNext(Record record) {
+
+                super.onNext(record);
+                throw new IllegalStateException("Boom!");
+            }
+        };
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        this.channel.writeInbound(newHeaderFrame());
+
+        ByteBuf frame = newChunkFrame(3, true);
+        this.channel.writeInbound(frame);
+
+        assertEquals(1, subscriber.records.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+        assertEquals(0, frame.refCnt());
+        assertTrue(this.handler.isIdle());
+        assertTrue(this.channel.isActive());
+    }
+
+    @Test
+    public void testQueryTimeout() throws Exception {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 100, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        publisher.subscribe(subscriber);
+        subscriber.subscription.request(1);
+
+        long deadline = System.currentTimeMillis() + 5000;
+
+        while (subscriber.error == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertTrue(subscriber.error instanceof QueryTimeoutException);
+        assertFalse(subscriber.completed);
+        assertTrue(this.handler.isIdle());
+    }
+
+    @Test
+    public void testTheTimeWaitingForTheDemandIsNotCountedInTheQueryTimeout() throws Exception {
+
+        RecordPublisher publisher = new RecordPublisher(this.channel, this.timer, 100, this.request);
+        CollectingSubscriber subscriber = new CollectingSubscriber();
+
+        publisher.subscribe(subscriber);
+
+        this.channel.writeInbound(newHeaderFrame());
+        this.channel.writeInbound(newChunkFrame(1, true));
+
+        Thread.sleep(300);
+
+        assertNull(subscriber.error);
+
+        subscriber.subscription.request(1);
+
+        assertEquals(1, subscriber.records.size());
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    /**
+     * Creates the frame of the data header response.
+     *
+     * @return the frame of the data header response
+     */
+    private ByteBuf newHeaderFrame() {
+
+        return encode(Msg.newResponseMsg(this.request.getHeader(),
+                                         OpCode.DATA_HEADER,
+                                         new DataHeaderPayload(this.definition)));
+    }
+
+    /**
+     * Creates the frame of a data chunk containing the specified number of records.
+     *
+     * @param numberOfRecords the number of records
+     * @param last <code>true</code> if the chunk is the last one of the stream
+     * @return the frame of the data chunk
+     * @throws IOException if a problem occurs while writing the records
+     */
+    private ByteBuf newChunkFrame(int numberOfRecords, boolean last) throws IOException {
+
+        Buffer buffer = Buffers.allocate(100);
+
+        for (int i = 0; i < numberOfRecords; i++) {
+
+            TimeSeriesRecord record = new TimeSeriesRecord(0,
+                                                           TimeUnit.NANOSECONDS,
+                                                           FieldType.MILLISECONDS_TIMESTAMP,
+                                                           FieldType.BYTE);
+            record.setTimestampInNanos(0, 12000000 + i);
+            record.setTimestampInMillis(1, 12);
+            record.setByte(2, 3);
+
+            writeRecord(buffer, record);
+        }
+
+        if (last) {
+            buffer.writeByte(Msg.END_OF_STREAM_MARKER);
+        }
+
+        return encode(Msg.newResponseMsg(this.request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(buffer)));
+    }
+
+    private static void writeRecord(ByteWriter writer, TimeSeriesRecord record) throws IOException {
+
+        writer.writeByte(record.getType());
+        VarInts.writeUnsignedInt(writer, record.computeSerializedSize());
+        record.writeTo(writer);
+    }
+
+    /**
+     * Encodes the specified message into a frame.
+     *
+     * @param msg the message to encode
+     * @return the frame
+     */
+    private static ByteBuf encode(Msg<?> msg) {
+
+        EmbeddedChannel encoder = new EmbeddedChannel(new MsgToByteEncoder());
+        encoder.writeOutbound(msg);
+
+        return (ByteBuf) encoder.readOutbound();
+    }
+
+    /**
+     * Subscriber keeping a copy of the records received.
+     */
+    private static class CollectingSubscriber implements Subscriber<Record> {
+
+        private final List<Record> records = new ArrayList<>();
+
+        private Subscription subscription;
+
+        private boolean completed;
+
+        private volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+        }
+
+        @Override
+        public void onNext(Record record) {
+
+            try {
+
+                this.records.add(record.newInstance());
+
+            } catch (Exception e) {
+
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            this.error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+}
@@ -15,6 +15,7 @@ package io.horizondb.client;
 
 import io.horizondb.io.Buffer;
 import io.horizondb.io.ByteWriter;
+import io.horizondb.io.ReadableBuffer;
 import io.horizondb.io.buffers.Buffers;
 import io.horizondb.io.encoding.VarInts;
 import io.horizondb.model.core.Record;
@@ -27,12 +28,19 @@ import io.horizondb.model.schema.DatabaseDefinition;
 import io.horizondb.model.schema.FieldType;
 import io.horizondb.model.schema.RecordTypeDefinition;
 import io.horizondb.model.schema.TimeSeriesDefinition;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import org.easymock.EasyMock;
 import org.junit.After;
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -79,6 +87,9 @@ public class StreamedRecordSetTest {
 		
 		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
 		
 		EasyMock.replay(channel);
 		
@@ -112,6 +123,9 @@ public class StreamedRecordSetTest {
 		
 		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
 		
 		EasyMock.replay(channel);
 		
@@ -166,6 +180,9 @@ public class StreamedRecordSetTest {
 		
 		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
 		
 		EasyMock.replay(channel);
 		
@@ -201,6 +218,60 @@ public class StreamedRecordSetTest {
 		EasyMock.verify(channel);
 	}
 	
+	@SuppressWarnings({ "rawtypes", "unchecked"})
+    @Test
+	public void testNextRecordWithFilteredRecordType() throws IOException {
+
+		MsgChannel channel = EasyMock.createMock(MsgChannel.class);
+		
+		Msg<HqlQueryPayload> request = createRequest();
+
+		Buffer heapBuffer = Buffers.allocate(100);
+		writeRecord(heapBuffer, newRecord(0, false, 12000700, 12, 3));
+		writeRecord(heapBuffer, newRecord(1, false, 12000800, 12, 1));
+		writeRecord(heapBuffer, newRecord(0, true, 1000200, 1, 0));
+		writeRecord(heapBuffer, newRecord(1, true, 500, 0, 1));
+		writeRecord(heapBuffer, newRecord(0, true, 3500, 0, -2));
+		heapBuffer.writeByte(Msg.END_OF_STREAM_MARKER);
+		
+		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
+		
+		EasyMock.replay(channel);
+		
+		try (StreamedRecordIterator iterator = new StreamedRecordIterator(newTwoTypesDefinition(), channel)) {
+			
+		    iterator.setAcceptedTypes(new boolean[] { false, true });
+		    
+		    assertTrue(iterator.hasNext());
+		    
+		    Record record = iterator.next();
+		    
+		    assertEquals(1, record.getType());
+		    assertFalse(record.isDelta());
+		    assertEquals(12000800, record.getTimestampInNanos(0));
+		    assertEquals(12, record.getTimestampInMillis(1));
+		    assertEquals(1, record.getByte(2));
+		    
+		    assertTrue(iterator.hasNext());
+		    
+		    record = iterator.next();
+		    
+		    assertEquals(1, record.getType());
+		    assertTrue(record.isDelta());
+		    assertEquals(500, record.getTimestampInNanos(0));
+		    assertEquals(0, record.getTimestampInMillis(1));
+		    assertEquals(1, record.getByte(2));
+		    
+			assertFalse(iterator.hasNext());
+		}
+		
+		EasyMock.verify(channel);
+	}
+	
 	@SuppressWarnings({ "rawtypes", "unchecked"})
     @Test
 	public void testStreamWithTwoChunk() throws Exception {
@@ -233,6 +304,7 @@ public class StreamedRecordSetTest {
 		
 		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
 		
 		heapBuffer = Buffers.allocate(20);
 		
@@ -241,6 +313,9 @@ public class StreamedRecordSetTest {
 
 		response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
 		
 		EasyMock.replay(channel);
 		
@@ -276,6 +351,230 @@ public class StreamedRecordSetTest {
 		EasyMock.verify(channel);
 	}
 	
+	@SuppressWarnings({ "rawtypes", "unchecked"})
+    @Test
+	public void testStreamWithInterleavedRecordTypesAndDeltasInTwoChunks() throws Exception {
+		
+	    MsgChannel channel = EasyMock.createMock(MsgChannel.class);
+		
+		Msg<HqlQueryPayload> request = createRequest();
+
+		Buffer heapBuffer = Buffers.allocate(100);
+		writeRecord(heapBuffer, newRecord(0, false, 12000700, 12, 3));
+		writeRecord(heapBuffer, newRecord(1, false, 12000800, 12, 1));
+		writeRecord(heapBuffer, newRecord(0, true, 1000200, 1, 0));
+		
+		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		heapBuffer = Buffers.allocate(100);
+		writeRecord(heapBuffer, newRecord(1, true, 500, 0, 1));
+		writeRecord(heapBuffer, newRecord(0, true, 3500, 0, -2));
+		writeRecord(heapBuffer, newRecord(1, true, 1000000, 1, -1));
+		heapBuffer.writeByte(Msg.END_OF_STREAM_MARKER);
+
+		response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
+		
+		EasyMock.replay(channel);
+		
+		TimeSeriesDefinition definition = newTwoTypesDefinition();
+		
+		try (RecordSet recordSet = new DefaultRecordSet(definition, new StreamedRecordIterator(definition, channel))) {
+			
+		    assertNextRecord(recordSet, 0, 12000700, 12, 3);
+		    assertNextRecord(recordSet, 1, 12000800, 12, 1);
+		    assertNextRecord(recordSet, 0, 13000900, 13, 3);
+		    assertNextRecord(recordSet, 1, 12001300, 12, 2);
+		    assertNextRecord(recordSet, 0, 13004400, 13, 1);
+		    assertNextRecord(recordSet, 1, 13001300, 13, 1);
+
+			assertFalse(recordSet.next());
+		}
+		
+		EasyMock.verify(channel);
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked"})
+    @Test
+	public void testIterationDoesNotAllocatePerRecord() throws Exception {
+		
+	    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+	    
+	    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+	    
+	    com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+	    
+	    Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+	    allocationBean.setThreadAllocatedMemoryEnabled(true);
+	    
+	    int numberOfRecords = 10000;
+	    
+	    MsgChannel channel = EasyMock.createMock(MsgChannel.class);
+		
+		Msg<HqlQueryPayload> request = createRequest();
+		
+		TimeSeriesRecord record = new TimeSeriesRecord(0,
+		                                               TimeUnit.NANOSECONDS,
+		                                               FieldType.MILLISECONDS_TIMESTAMP,
+		                                               FieldType.BYTE);
+		record.setTimestampInNanos(0, 12000700);
+		record.setTimestampInMillis(1, 12);
+		record.setByte(2, 3);
+		
+		for (int i = 0; i < 2; i++) {
+		    
+		    Buffer heapBuffer = Buffers.allocate(numberOfRecords * 16);
+		    
+		    for (int j = 0; j < numberOfRecords; j++) {
+		        writeRecord(heapBuffer, record);
+		    }
+		    
+		    Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		    EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		    EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		}
+		
+		Buffer heapBuffer = Buffers.allocate(1);
+		heapBuffer.writeByte(Msg.END_OF_STREAM_MARKER);
+
+		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
+		
+		EasyMock.replay(channel);
+		
+		long threadId = Thread.currentThread().getId();
+		
+		try (StreamedRecordIterator iterator = new StreamedRecordIterator(this.definition, channel)) {
+			
+		    // The first chunk warms up the iterator.
+		    for (int i = 0; i < numberOfRecords; i++) {
+		        
+		        assertTrue(iterator.hasNext());
+		        iterator.next();
+		    }
+		    
+		    long before = allocationBean.getThreadAllocatedBytes(threadId);
+		    long sum = 0;
+		    
+		    for (int i = 0; i < numberOfRecords; i++) {
+		        
+		        assertTrue(iterator.hasNext());
+		        sum += iterator.next().getByte(2);
+		    }
+		    
+		    long allocatedBytes = allocationBean.getThreadAllocatedBytes(threadId) - before;
+
+		    assertEquals(3 * numberOfRecords, sum);
+		    assertTrue("Allocated " + allocatedBytes + " bytes for " + numberOfRecords + " records",
+		               allocatedBytes / numberOfRecords < 8);
+		    
+			assertFalse(iterator.hasNext());
+		}
+		
+		EasyMock.verify(channel);
+	}
+	
+	@SuppressWarnings({ "rawtypes", "unchecked"})
+    @Test
+	public void testPrefetchingStreamWithTwoChunk() throws Exception {
+		
+	    MsgChannel channel = EasyMock.createMock(MsgChannel.class);
+		
+		Msg<HqlQueryPayload> request = createRequest();
+		
+		TimeSeriesRecord first = new TimeSeriesRecord(0,
+		                                              TimeUnit.NANOSECONDS,
+		                                              FieldType.MILLISECONDS_TIMESTAMP,
+		                                              FieldType.BYTE);
+		first.setTimestampInNanos(0, 12000700);
+		first.setTimestampInMillis(1, 12);
+		first.setByte(2, 3);
+		
+		TimeSeriesRecord second = new TimeSeriesRecord(0, TimeUnit.NANOSECONDS, FieldType.MILLISECONDS_TIMESTAMP, FieldType.BYTE); 
+		second.setTimestampInNanos(0, 13000900);
+		second.setTimestampInMillis(1, 13);
+		second.setByte(2, 3);
+		
+		TimeSeriesRecord third = new TimeSeriesRecord(0, TimeUnit.NANOSECONDS, FieldType.MILLISECONDS_TIMESTAMP, FieldType.BYTE); 
+		third.setTimestampInNanos(0, 13004400);
+		third.setTimestampInMillis(1, 13);
+		third.setByte(2, 1);
+
+		Buffer heapBuffer = Buffers.allocate(20);
+		writeRecord(heapBuffer, first);
+		writeRecord(heapBuffer, second);
+		
+		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		
+		ByteBuf firstFrame = toFrame(heapBuffer);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(firstFrame);
+		
+		heapBuffer = Buffers.allocate(20);
+		
+		writeRecord(heapBuffer, third);
+		heapBuffer.writeByte(Msg.END_OF_STREAM_MARKER);
+
+		response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
+		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		
+		ByteBuf secondFrame = toFrame(heapBuffer);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(secondFrame);
+		
+		channel.close();
+		
+		EasyMock.replay(channel);
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try (PrefetchingRecordIterator iterator = new PrefetchingRecordIterator(this.definition, channel, executor, 1)) {
+			
+			assertTrue(iterator.hasNext());
+			
+			Record record = iterator.next();
+			
+			assertEquals(first.getTimestampInNanos(0), record.getTimestampInNanos(0));
+			assertEquals(first.getTimestampInMillis(1), record.getTimestampInMillis(1));
+			assertEquals(first.getByte(2), record.getByte(2));
+			
+			assertTrue(iterator.hasNext());
+			
+			record = iterator.next();
+			
+			assertEquals(second.getTimestampInNanos(0), record.getTimestampInNanos(0));
+			assertEquals(second.getTimestampInMillis(1), record.getTimestampInMillis(1));
+			assertEquals(second.getByte(2), record.getByte(2));
+			
+			assertTrue(iterator.hasNext());
+			
+			record = iterator.next();
+			
+			assertEquals(third.getTimestampInNanos(0), record.getTimestampInNanos(0));
+			assertEquals(third.getTimestampInMillis(1), record.getTimestampInMillis(1));
+			assertEquals(third.getByte(2), record.getByte(2));
+
+			assertFalse(iterator.hasNext());
+			
+		} finally {
+		    
+		    executor.shutdownNow();
+		}
+		
+		// The frames retained while their records were waiting to be consumed have been released.
+		assertEquals(1, firstFrame.refCnt());
+		assertEquals(1, secondFrame.refCnt());
+		
+		EasyMock.verify(channel);
+	}
+	
 	@SuppressWarnings({ "rawtypes", "unchecked"})
     @Test
 	public void testStreamWithOnlyEndOfStreamInSecondChunk() throws Exception {
@@ -309,6 +608,7 @@ public class StreamedRecordSetTest {
 		
 		Msg response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
 		
 		heapBuffer = Buffers.allocate(27);
 		
@@ -316,6 +616,9 @@ public class StreamedRecordSetTest {
 
 		response = Msg.newResponseMsg(request.getHeader(), OpCode.DATA_CHUNK, new DataChunkPayload(heapBuffer));
 		EasyMock.expect(channel.awaitResponse()).andReturn(response);
+		EasyMock.expect(channel.getCurrentFrame()).andReturn(toFrame(heapBuffer));
+		
+		channel.close();
 		
 		EasyMock.replay(channel);
 		
@@ -351,6 +654,71 @@ public class StreamedRecordSetTest {
 		EasyMock.verify(channel);
 	}
 	
+    /**
+     * Creates a frame containing a copy of the specified chunk data, as the chunk data is the last part
+     * of a data chunk frame.
+     * 
+     * @param chunk the chunk data
+     * @return the frame
+     */
+    private static ByteBuf toFrame(Buffer chunk) {
+        
+        ReadableBuffer duplicate = chunk.duplicate();
+        byte[] bytes = new byte[duplicate.readableBytes()];
+        duplicate.readBytes(bytes, 0, bytes.length);
+        
+        return Unpooled.wrappedBuffer(bytes);
+    }
+    
+    /**
+     * Creates a definition with two record types having the same fields: ExchangeState (type 0) and 
+     * Trade (type 1).
+     * 
+     * @return the definition
+     */
+    private static TimeSeriesDefinition newTwoTypesDefinition() {
+
+        RecordTypeDefinition exchangeState = RecordTypeDefinition.newBuilder("ExchangeState")
+                                                                 .addMillisecondTimestampField("exchangeTimestamp")
+                                                                 .addByteField("status")
+                                                                 .build();
+
+        RecordTypeDefinition trade = RecordTypeDefinition.newBuilder("Trade")
+                                                         .addMillisecondTimestampField("tradeTimestamp")
+                                                         .addByteField("side")
+                                                         .build();
+
+        return new DatabaseDefinition("test").newTimeSeriesDefinitionBuilder("test")
+                                             .timeUnit(TimeUnit.NANOSECONDS)
+                                             .addRecordType(exchangeState)
+                                             .addRecordType(trade)
+                                             .build();
+    }
+
+    /**
+     * Creates a new record of the specified type.
+     * 
+     * @param type the record type
+     * @param delta <code>true</code> if the record is a delta
+     * @param timestampInNanos the record timestamp or its delta
+     * @param timestampInMillis the value of the timestamp field or its delta
+     * @param b the value of the byte field or its delta
+     * @return the record
+     */
+    private static TimeSeriesRecord newRecord(int type, boolean delta, long timestampInNanos, long timestampInMillis, int b) {
+
+        TimeSeriesRecord record = new TimeSeriesRecord(type,
+                                                       TimeUnit.NANOSECONDS,
+                                                       FieldType.MILLISECONDS_TIMESTAMP,
+                                                       FieldType.BYTE);
+        record.setDelta(delta);
+        record.setTimestampInNanos(0, timestampInNanos);
+        record.setTimestampInMillis(1, timestampInMillis);
+        record.setByte(2, b);
+
+        return record;
+    }
+
 	/**
 	 * Writes the specified record in the specified writer.
 	 * 
@@ -365,6 +733,24 @@ public class StreamedRecordSetTest {
 		record.writeTo(writer);
     }
     
+    /**
+     * Moves the specified record set to its next record and checks its values.
+     * 
+     * @param recordSet the record set
+     * @param type the expected record type
+     * @param timestampInNanos the expected record timestamp
+     * @param timestampInMillis the expected value of the timestamp field
+     * @param b the expected value of the byte field
+     */
+    private static void assertNextRecord(RecordSet recordSet, int type, long timestampInNanos, long timestampInMillis, int b) {
+
+        assertTrue(recordSet.next());
+        assertEquals(type, recordSet.getType());
+        assertEquals(timestampInNanos, recordSet.getTimestampInNanos(0));
+        assertEquals(timestampInMillis, recordSet.getTimestampInMillis(1));
+        assertEquals(b, recordSet.getByte(2));
+    }
+
 	/**
 	 * Creates the request message.
 	 * 
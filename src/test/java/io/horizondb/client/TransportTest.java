@@ -0,0 +1,79 @@
+/**
+ * Copyright 2014 Benjamin Lerer
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.horizondb.client;
+
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TransportTest {
+
+    @Test
+    public void testNio() {
+
+        assertFalse(Transport.NIO.isEpoll());
+    }
+
+    @Test
+    public void testAutoFallsBackToNioWhenEpollIsNotAvailable() {
+
+        assertEquals(EpollSupport.isAvailable(), Transport.AUTO.isEpoll());
+
+        EventLoopResource resource = new EventLoopResource(1, new DefaultThreadFactory("test", true), Transport.AUTO);
+
+        try {
+
+            assertEquals(EpollSupport.isAvailable(), resource.isEpoll());
+            assertEquals(!EpollSupport.isAvailable(), resource.getGroup() instanceof NioEventLoopGroup);
+
+        } finally {
+
+            resource.release();
+        }
+    }
+
+    @Test
+    public void testEpollFailsWhenNotAvailable() {
+
+        Assume.assumeFalse(EpollSupport.isAvailable());
+
+        try {
+
+            Transport.EPOLL.isEpoll();
+            fail();
+
+        } catch (HorizonDBException e) {
+
+            assertTrue(e.getMessage().contains("epoll"));
+            assertTrue(e.getCause() != null);
+        }
+    }
+
+    @Test
+    public void testEpollWhenAvailable() {
+
+        Assume.assumeTrue(EpollSupport.isAvailable());
+
+        assertTrue(Transport.EPOLL.isEpoll());
+    }
+}